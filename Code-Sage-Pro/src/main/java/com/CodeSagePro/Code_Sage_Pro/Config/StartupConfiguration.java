@@ -0,0 +1,23 @@
+package com.CodeSagePro.Code_Sage_Pro.Config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+@Configuration
+@Profile("prod")
+public class StartupConfiguration {
+
+    /**
+     * The prod profile initializes beans lazily to start faster, which would also postpone schema
+     * creation and validation to the first request. Keeping the JPA setup eager makes a broken
+     * schema fail the startup instead.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerSchemaValidation() {
+        return LazyInitializationExcludeFilter.forBeanTypes(EntityManagerFactory.class, LocalContainerEntityManagerFactoryBean.class);
+    }
+}
\ No newline at end of file
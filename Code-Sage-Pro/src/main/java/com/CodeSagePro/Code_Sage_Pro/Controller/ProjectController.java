@@ -1,23 +1,34 @@
 package com.CodeSagePro.Code_Sage_Pro.Controller;
 
+import com.CodeSagePro.Code_Sage_Pro.Dto.BatchTestResult;
+import com.CodeSagePro.Code_Sage_Pro.Dto.CodeSearchHit;
 import com.CodeSagePro.Code_Sage_Pro.Dto.FileNode;
+import com.CodeSagePro.Code_Sage_Pro.Dto.ProjectDiff;
 import com.CodeSagePro.Code_Sage_Pro.Service.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 // DTOs for request bodies
 record TestRequest(String projectId, String filePath) {}
 record RefactorRequest(String codeSnippet, String goal) {}
-record LiveEditRequest(String projectId, String prompt) {}
+record LiveEditRequest(String projectId, String prompt, String sessionId) {}
+record BatchTestRequest(String projectId, String glob, Integer maxConcurrency, String resumeJobId) {}
 
 @RestController
 @RequestMapping("/api/project")
@@ -31,6 +42,10 @@ public class ProjectController {
     private final TestGenerationService testGenerationService;
     private final RefactoringService refactoringService;
     private final LiveEditingService liveEditingService;
+    private final JavaSymbolIndexService symbolIndexService;
+    private final BatchTestGenerationService batchTestGenerationService;
+    private final ProjectSnapshotService snapshotService;
+    private final NearDuplicateService nearDuplicateService;
 
     private final Map<String, Path> activeProjects = new ConcurrentHashMap<>();
 
@@ -41,7 +56,11 @@ public class ProjectController {
                              DatabaseAnalysisService databaseAnalysisService,
                              TestGenerationService testGenerationService,
                              RefactoringService refactoringService,
-                             LiveEditingService liveEditingService) {
+                             LiveEditingService liveEditingService,
+                             JavaSymbolIndexService symbolIndexService,
+                             BatchTestGenerationService batchTestGenerationService,
+                             ProjectSnapshotService snapshotService,
+                             NearDuplicateService nearDuplicateService) {
         this.fileService = fileService;
         this.analysisService = analysisService;
         this.embeddingService = embeddingService;
@@ -50,44 +69,105 @@ public class ProjectController {
         this.testGenerationService = testGenerationService;
         this.refactoringService = refactoringService;
         this.liveEditingService = liveEditingService;
+        this.symbolIndexService = symbolIndexService;
+        this.batchTestGenerationService = batchTestGenerationService;
+        this.snapshotService = snapshotService;
+        this.nearDuplicateService = nearDuplicateService;
     }
 
     /**
      * Handles the initial upload and comprehensive analysis of a project.
      * This includes code review, documentation generation, and dependency analysis.
+     * When the ID of an already analyzed project is passed, the upload is treated as its next version:
+     * only changed files and the files depending on them are reviewed again, and cached findings are reused.
      */
     @PostMapping("/analyze")
-    public ResponseEntity<?> analyzeProject(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> analyzeProject(@RequestParam("file") MultipartFile file,
+                                            @RequestParam(value = "projectId", required = false) String existingProjectId) {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("error", "Please select a file to upload."));
         }
+        if (existingProjectId != null && !snapshotService.hasSnapshot(existingProjectId)) {
+            return ResponseEntity.status(404).body(Map.of("error", "Project not found or session expired."));
+        }
         try {
             Path projectPath = fileService.decompress(file);
-            String projectId = projectPath.getFileName().toString();
-            activeProjects.put(projectId, projectPath);
+            String projectId = existingProjectId != null ? existingProjectId : projectPath.getFileName().toString();
 
-            embeddingService.generateAndStoreEmbeddings(projectPath);
-            String codeReview = analysisService.performCodeReview(projectPath);
-            String documentation = analysisService.generateDocumentation(projectPath);
+            // Snapshot and symbol index are only replaced once the upload has been analyzed; if the model
+            // fails halfway, re-uploading compares against the last successfully analyzed version again
+            ProjectSnapshotService.PendingSnapshot snapshot = snapshotService.diff(projectId, projectPath);
+            ProjectDiff diff = snapshot.diff();
+            JavaSymbolIndexService.PendingIndex index = symbolIndexService.findAffected(projectId, projectPath, diff);
+            // Unchanged files that became or stopped being a near-duplicate copy are reviewed again as well
+            Set<String> duplicateRoleChanges = existingProjectId != null
+                    ? nearDuplicateService.filesWithChangedRole(projectId, activeProjects.get(projectId), projectPath)
+                    : Set.of();
+            // Group near-duplicate files first; prompts and embeddings then use one representative per group
+            Map<String, Object> duplicates = nearDuplicateService.savingsReport(projectId, projectPath);
+            String codeReview;
+            String documentation;
+            Map<String, Object> changes = Map.of();
+            if (existingProjectId != null) {
+                Set<String> filesToReview = new TreeSet<>(index.affectedFiles());
+                filesToReview.addAll(duplicateRoleChanges);
+                codeReview = analysisService.performCodeReview(projectId, projectPath, filesToReview, diff.removed());
+                documentation = analysisService.updateDocumentation(projectId, projectPath, diff);
+                changes = Map.of(
+                        "added", diff.added(),
+                        "modified", diff.modified(),
+                        "removed", diff.removed(),
+                        "reviewedFiles", filesToReview
+                );
+            } else {
+                codeReview = analysisService.performCodeReview(projectId, projectPath);
+                documentation = analysisService.generateDocumentation(projectId, projectPath);
+            }
+            embeddingService.generateAndStoreEmbeddings(projectId, projectPath);
             List<FileNode> fileTree = fileStructureService.generateFileTree(projectPath);
             Map<String, String> dbConnections = databaseAnalysisService.analyzeDatabaseConnections(projectPath);
 
+            symbolIndexService.commit(projectId, index);
+            snapshotService.commit(projectId, snapshot);
+            activeProjects.put(projectId, projectPath);
+
             Map<String, Object> analysisResults = Map.of(
                     "projectId", projectId,
                     "codeReview", codeReview,
                     "documentation", documentation,
                     "fileTree", fileTree,
-                    "dbConnections", dbConnections
+                    "dbConnections", dbConnections,
+                    "changes", changes,
+                    "duplicates", duplicates
             );
             return ResponseEntity.ok(analysisResults);
         } catch (IOException e) {
             e.printStackTrace();
             return ResponseEntity.internalServerError().body(Map.of("error", "Failed to process file: " + e.getMessage()));
+        } catch (RuntimeException e) {
+            // E.g. the model server is unreachable; nothing was committed, so the upload can simply be retried
+            e.printStackTrace();
+            return ResponseEntity.internalServerError().body(Map.of("error", "Failed to analyze project: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Lists the groups of near-duplicate files of a project and the tokens and embedding calls saved by skipping them.
+     */
+    @GetMapping("/duplicates")
+    public ResponseEntity<?> getDuplicateReport(@RequestParam String projectId) {
+        Path projectPath = activeProjects.get(projectId);
+        if (projectPath == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Project not found or session expired."));
         }
+        return ResponseEntity.ok(nearDuplicateService.savingsReport(projectId, projectPath));
     }
 
     /**
      * Generates a step-by-step implementation guide based on a user's prompt.
+     * Requests without a sessionId start a new conversation; passing the returned sessionId
+     * continues it, reusing the project context sent with the first turn. An unknown or expired
+     * sessionId (e.g. after a restart) silently starts a new conversation; the response carries its ID.
      */
     @PostMapping("/live-edit")
     public ResponseEntity<?> liveEditProject(@RequestBody LiveEditRequest request) {
@@ -96,14 +176,25 @@ public class ProjectController {
             return ResponseEntity.status(404).body(Map.of("error", "Project not found or session expired."));
         }
         try {
-            String implementationGuide = liveEditingService.generateImplementationGuide(projectPath, request.prompt());
-            return ResponseEntity.ok(Map.of("guide", implementationGuide));
+            String sessionId = request.sessionId() != null && liveEditingService.hasSession(request.sessionId(), request.projectId())
+                    ? request.sessionId()
+                    : liveEditingService.startSession(request.projectId(), projectPath);
+            String implementationGuide = liveEditingService.continueSession(sessionId, request.projectId(), request.prompt());
+            return ResponseEntity.ok(Map.of("guide", implementationGuide, "sessionId", sessionId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body(Map.of("error", "Error generating guide: " + e.getMessage()));
         }
     }
 
+    @DeleteMapping("/live-edit/{sessionId}")
+    public ResponseEntity<?> endLiveEditSession(@PathVariable String sessionId) {
+        liveEditingService.endSession(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
     @GetMapping(value = "/file-content", produces = MediaType.TEXT_PLAIN_VALUE)
     public ResponseEntity<String> getFileContent(@RequestParam String projectId, @RequestParam String filePath) {
         Path projectPath = activeProjects.get(projectId);
@@ -126,6 +217,50 @@ public class ProjectController {
         }
     }
 
+    /**
+     * Semantic search over the stored code embeddings. Returns only the location and score of each hit;
+     * the text of a hit is fetched separately through /search/{embeddingId}/content.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchCode(@RequestParam String query, @RequestParam(defaultValue = "5") int limit) {
+        if (query == null || query.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Search query cannot be empty."));
+        }
+        if (limit < 1) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Limit must be at least 1."));
+        }
+        try {
+            List<CodeSearchHit> hits = embeddingService.search(query, limit);
+            return ResponseEntity.ok(Map.of("hits", hits));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(500).body(Map.of("error", "Error during search: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping(value = "/search/{embeddingId}/content", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getSearchHitContent(@PathVariable Long embeddingId) {
+        return embeddingService.loadChunkContent(embeddingId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(404).body("Search hit not found."));
+    }
+
+    /**
+     * Reports recall and speedup of the quantized search against exact search on the stored embeddings.
+     */
+    @GetMapping("/search/quantization-report")
+    public ResponseEntity<?> getQuantizationReport(@RequestParam(defaultValue = "20") int samples,
+                                                   @RequestParam(defaultValue = "10") int k) {
+        try {
+            return ResponseEntity.ok(embeddingService.evaluateQuantizedSearch(samples, k));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(500).body(Map.of("error", "Error evaluating quantized search: " + e.getMessage()));
+        }
+    }
+
     @PostMapping("/generate-tests")
     public ResponseEntity<?> generateTests(@RequestBody TestRequest request) {
         Path projectPath = activeProjects.get(request.projectId());
@@ -138,7 +273,8 @@ public class ProjectController {
                 return ResponseEntity.status(400).body(Map.of("error", "Access to the requested file is not allowed."));
             }
             String content = Files.readString(targetFile);
-            String generatedTests = testGenerationService.generateUnitTests(content, targetFile.getFileName().toString());
+            String dependencies = symbolIndexService.describeDirectDependencies(request.projectId(), projectPath, targetFile);
+            String generatedTests = testGenerationService.generateUnitTests(content, targetFile.getFileName().toString(), dependencies);
             return ResponseEntity.ok(Map.of("testCode", generatedTests));
         } catch (IOException e) {
             e.printStackTrace();
@@ -146,6 +282,65 @@ public class ProjectController {
         }
     }
 
+    /**
+     * Generates tests for every Java class of a project matching a glob, streaming each result as a
+     * server-sent event as soon as it completes. The final "complete" event links to the ZIP of all tests.
+     */
+    @PostMapping(value = "/generate-tests/batch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateTestsBatch(@RequestBody BatchTestRequest request) {
+        Path projectPath = activeProjects.get(request.projectId());
+        if (projectPath == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Project not found or session expired.");
+        }
+        SseEmitter emitter = new SseEmitter(0L);
+        try {
+            batchTestGenerationService.startBatch(request.projectId(), projectPath, request.glob(),
+                    request.maxConcurrency(), request.resumeJobId(), new BatchTestGenerationService.BatchListener() {
+                        @Override
+                        public void onStart(String jobId, int pendingClasses) {
+                            sendEvent(emitter, "started", Map.of("jobId", jobId, "pendingClasses", pendingClasses));
+                        }
+
+                        @Override
+                        public void onResult(BatchTestResult result) {
+                            sendEvent(emitter, "result", result);
+                        }
+
+                        @Override
+                        public void onComplete(Map<String, Object> summary) {
+                            sendEvent(emitter, "complete", summary);
+                            emitter.complete();
+                        }
+                    });
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Invalid glob (PatternSyntaxException) or a different glob on resume
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error scanning project: " + e.getMessage());
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    @GetMapping(value = "/generate-tests/batch/{jobId}/zip", produces = "application/zip")
+    public ResponseEntity<byte[]> downloadBatchTests(@PathVariable String jobId) {
+        try {
+            byte[] zip = batchTestGenerationService.exportZip(jobId);
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"generated-tests-%s.zip\"".formatted(jobId))
+                    .body(zip);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).build();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(500).build();
+        }
+    }
+
     @PostMapping("/refactor-code")
     public ResponseEntity<?> refactorCode(@RequestBody RefactorRequest request) {
         if (request.codeSnippet() == null || request.codeSnippet().isBlank()) {
@@ -163,6 +358,14 @@ public class ProjectController {
         }
     }
 
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // The client disconnected; the job keeps running and can still be downloaded or resumed
+        }
+    }
+
     private boolean isTextViewable(String filePath) {
         if (filePath == null || filePath.isEmpty()) {
             return false;
@@ -0,0 +1,17 @@
+package com.CodeSagePro.Code_Sage_Pro.Dto;
+
+
+/**
+ * Outcome of generating tests for a single class within a batch job.
+ * @param sourcePath The project-relative path of the class under test.
+ * @param testPath The project-relative path the generated test class belongs at.
+ * @param testCode The generated test class, or null if generation failed.
+ * @param durationMillis How long reading the class and generating its tests took.
+ * @param error The failure message, or null if generation succeeded.
+ */
+public record BatchTestResult(String sourcePath, String testPath, String testCode, long durationMillis, String error) {
+
+    public boolean succeeded() {
+        return error == null;
+    }
+}
\ No newline at end of file
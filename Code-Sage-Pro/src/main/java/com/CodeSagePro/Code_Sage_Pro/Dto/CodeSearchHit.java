@@ -0,0 +1,16 @@
+package com.CodeSagePro.Code_Sage_Pro.Dto;
+
+
+/**
+ * Lightweight result of a similarity search: where the matching chunk is and how similar it is,
+ * without its text or vector. The text can be loaded separately for the hits that are actually used.
+ */
+public interface CodeSearchHit {
+    Long getId();
+    String getFilePath();
+    Integer getStartOffset();
+    Integer getEndOffset();
+    // Comma-separated near-duplicate files the hit's file stands in for, or null
+    String getDuplicatePaths();
+    Double getScore();
+}
\ No newline at end of file
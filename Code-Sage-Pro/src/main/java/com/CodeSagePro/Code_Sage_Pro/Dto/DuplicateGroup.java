@@ -0,0 +1,12 @@
+package com.CodeSagePro.Code_Sage_Pro.Dto;
+
+
+import java.util.List;
+
+/**
+ * A set of near-identical files. Only the representative is sent to the AI and embedded.
+ * @param representative The project-relative path of the file kept as the group's stand-in.
+ * @param duplicates The project-relative paths of the other files in the group.
+ * @param similarity The lowest estimated Jaccard similarity between the representative and a duplicate.
+ */
+public record DuplicateGroup(String representative, List<String> duplicates, double similarity) {}
\ No newline at end of file
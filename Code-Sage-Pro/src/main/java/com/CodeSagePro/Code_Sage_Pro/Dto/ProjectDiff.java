@@ -0,0 +1,24 @@
+package com.CodeSagePro.Code_Sage_Pro.Dto;
+
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * File-level difference between two uploads of the same project, as project-relative paths.
+ */
+public record ProjectDiff(Set<String> added, Set<String> modified, Set<String> removed) {
+
+    /**
+     * @return The files whose content is new or different in the latest upload.
+     */
+    public Set<String> changed() {
+        Set<String> changed = new TreeSet<>(added);
+        changed.addAll(modified);
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.CodeSagePro.Code_Sage_Pro.Model;
+
+import jakarta.persistence.*;
+
+/**
+ * GZIP-compressed text and embedding of a code chunk, addressed by the SHA-256 hash of the uncompressed text.
+ * Identical chunks (copied files, vendored code) are stored and embedded only once, and rows are kept
+ * across uploads so unchanged chunks are never embedded again.
+ */
+@Entity
+public class CodeChunkContent {
+
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] compressedContent;
+
+    @Column(nullable = false)
+    private int originalLength;
+
+    // Written only through CodeChunkContentRepository.insertWithEmbedding, which casts the pgvector text format
+    @Column(columnDefinition = "vector(4096)", insertable = false, updatable = false)
+    private String embedding;
+
+    // 1 bit per dimension (512 bytes instead of 16 KB), filled in the database by binary_quantize(embedding)
+    @Column(columnDefinition = "bit(4096)", insertable = false, updatable = false)
+    private String embeddingBits;
+
+    // --- GETTERS AND SETTERS ---
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public byte[] getCompressedContent() {
+        return compressedContent;
+    }
+
+    public void setCompressedContent(byte[] compressedContent) {
+        this.compressedContent = compressedContent;
+    }
+
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    public void setOriginalLength(int originalLength) {
+        this.originalLength = originalLength;
+    }
+
+    public String getEmbedding() {
+        return embedding;
+    }
+
+    public String getEmbeddingBits() {
+        return embeddingBits;
+    }
+}
\ No newline at end of file
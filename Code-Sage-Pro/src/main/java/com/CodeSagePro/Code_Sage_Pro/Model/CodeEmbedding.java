@@ -1,9 +1,13 @@
 package com.CodeSagePro.Code_Sage_Pro.Model;
 
-import com.pgvector.PGvector;
 import jakarta.persistence.*;
 
+/**
+ * One occurrence of a chunk in a project file. The chunk's text and vector live in the shared
+ * {@link CodeChunkContent} row, so identical chunks are stored and embedded only once.
+ */
 @Entity
+@Table(indexes = @Index(name = "code_embedding_content_hash_idx", columnList = "content_hash"))
 public class CodeEmbedding {
 
     @Id
@@ -13,12 +17,20 @@ public class CodeEmbedding {
     @Column(nullable = false)
     private String filePath;
 
-    @Lob
-    @Column(nullable = false, columnDefinition = "TEXT")
-    private String content;
+    @Column(nullable = false)
+    private int startOffset;
+
+    @Column(nullable = false)
+    private int endOffset;
+
+    // Comma-separated paths of the near-duplicate files this file stands in for, which are not embedded themselves
+    @Column(columnDefinition = "TEXT")
+    private String duplicatePaths;
 
-    @Column(columnDefinition = "vector(4096)")
-    private PGvector embedding;
+    // Loaded only when the chunk text is actually needed; identical chunks share one row
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "content_hash", nullable = false)
+    private CodeChunkContent content;
 
     // --- GETTERS AND SETTERS ---
     // Make sure all of these are present
@@ -39,19 +51,35 @@ public class CodeEmbedding {
         this.filePath = filePath;
     }
 
-    public String getContent() {
-        return content;
+    public int getStartOffset() {
+        return startOffset;
     }
 
-    public void setContent(String content) {
-        this.content = content;
+    public void setStartOffset(int startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    public int getEndOffset() {
+        return endOffset;
     }
 
-    public PGvector getEmbedding() {
-        return embedding;
+    public void setEndOffset(int endOffset) {
+        this.endOffset = endOffset;
     }
 
-    public void setEmbedding(PGvector embedding) { // <-- FIX: Added this method
-        this.embedding = embedding;
+    public String getDuplicatePaths() {
+        return duplicatePaths;
+    }
+
+    public void setDuplicatePaths(String duplicatePaths) {
+        this.duplicatePaths = duplicatePaths;
+    }
+
+    public CodeChunkContent getContent() {
+        return content;
+    }
+
+    public void setContent(CodeChunkContent content) {
+        this.content = content;
     }
 }
\ No newline at end of file
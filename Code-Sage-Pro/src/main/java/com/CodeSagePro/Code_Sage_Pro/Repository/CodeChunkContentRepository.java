@@ -0,0 +1,83 @@
+package com.CodeSagePro.Code_Sage_Pro.Repository;
+
+import com.CodeSagePro.Code_Sage_Pro.Model.CodeChunkContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface CodeChunkContentRepository extends JpaRepository<CodeChunkContent, String> {
+
+    /**
+     * Loads only the compressed text of the chunk referenced by an embedding, without its vector.
+     *
+     * @param embeddingId The ID of the CodeEmbedding.
+     * @return The GZIP-compressed chunk text, if the embedding exists.
+     */
+    @Query("SELECT c.compressedContent FROM CodeEmbedding e JOIN e.content c WHERE e.id = ?1")
+    Optional<byte[]> findCompressedContentByEmbeddingId(Long embeddingId);
+
+    /**
+     * Lists the hashes of all chunks that already have a stored embedding.
+     *
+     * @return The content hashes.
+     */
+    @Query("SELECT c.contentHash FROM CodeChunkContent c")
+    List<String> findAllContentHashes();
+
+    /**
+     * Stores a chunk together with its vector. The vector is passed in pgvector text format and cast in
+     * the database, because Hibernate has no mapping for the vector type. A chunk stored concurrently
+     * by another pass is left as it is.
+     *
+     * @param contentHash The SHA-256 hash of the uncompressed chunk text.
+     * @param compressedContent The GZIP-compressed chunk text.
+     * @param originalLength The length of the uncompressed chunk text.
+     * @param embedding The vector of the chunk, in pgvector text format.
+     * @return The number of rows inserted (0 or 1).
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO code_chunk_content (content_hash, compressed_content, original_length, embedding)
+            VALUES (?1, ?2, ?3, CAST(?4 AS vector))
+            ON CONFLICT (content_hash) DO NOTHING
+            """, nativeQuery = true)
+    int insertWithEmbedding(String contentHash, byte[] compressedContent, int originalLength, String embedding);
+
+    /**
+     * Deletes the chunks no longer referenced by any embedding, i.e. those of files that were changed or removed.
+     *
+     * @return The number of chunks deleted.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            DELETE FROM code_chunk_content c
+            WHERE NOT EXISTS (SELECT 1 FROM code_embedding e WHERE e.content_hash = c.content_hash)
+            """, nativeQuery = true)
+    int deleteUnreferenced();
+
+    /**
+     * Fills the binary-quantized vector of every chunk stored since the last call.
+     *
+     * @return The number of chunks quantized.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE code_chunk_content SET embedding_bits = CAST(binary_quantize(embedding) AS bit(4096)) WHERE embedding_bits IS NULL",
+            nativeQuery = true)
+    int quantizePendingEmbeddings();
+
+    /**
+     * Creates the HNSW index used by the Hamming-distance first pass of the quantized search, if it is missing.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "CREATE INDEX IF NOT EXISTS code_chunk_content_bits_idx ON code_chunk_content USING hnsw (embedding_bits bit_hamming_ops)",
+            nativeQuery = true)
+    void createQuantizedIndex();
+}
\ No newline at end of file
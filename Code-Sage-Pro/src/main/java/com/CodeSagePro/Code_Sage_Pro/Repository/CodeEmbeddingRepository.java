@@ -1,21 +1,94 @@
 package com.CodeSagePro.Code_Sage_Pro.Repository;
 
+import com.CodeSagePro.Code_Sage_Pro.Dto.CodeSearchHit;
 import com.CodeSagePro.Code_Sage_Pro.Model.CodeEmbedding;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 public interface CodeEmbeddingRepository extends JpaRepository<CodeEmbedding, Long> {
 
     /**
-     * Finds the top 'k' most similar code embeddings to a given vector using Cosine Distance.
-     * The '<=>' operator calculates the cosine distance (0=exact match, 1=opposite, 2=orthogonal).
+     * Replaces all stored chunk locations in one transaction, so a search never sees an empty index
+     * and a failed save leaves the previous locations in place.
      *
-     * @param embedding The vector to compare against.
+     * @param embeddings The chunk locations of the newly analyzed project.
+     */
+    @Transactional
+    default void replaceAll(List<CodeEmbedding> embeddings) {
+        deleteAllInBatch();
+        saveAll(embeddings);
+    }
+
+    /**
+     * Finds the top 'k' most similar code chunks to a given vector using Cosine Distance.
+     * The '<=>' operator calculates the cosine distance (0=exact match, 1=orthogonal, 2=opposite).
+     * Only the chunk location and score are selected, so neither the chunk text nor the stored vectors are transferred.
+     *
+     * @param embedding The vector to compare against, in pgvector text format.
+     * @param limit The number of nearest neighbors to return.
+     * @return The most similar chunks, best match first.
+     */
+    @Query(value = """
+            SELECT e.id, e.file_path AS "filePath", e.start_offset AS "startOffset", e.end_offset AS "endOffset",
+                   e.duplicate_paths AS "duplicatePaths", 1 - (c.embedding <=> CAST(?1 AS vector)) AS "score"
+            FROM code_embedding e
+            JOIN code_chunk_content c ON c.content_hash = e.content_hash
+            ORDER BY c.embedding <=> CAST(?1 AS vector)
+            LIMIT ?2
+            """, nativeQuery = true)
+    List<CodeSearchHit> findMostSimilar(String embedding, int limit);
+
+    /**
+     * Two-stage search: the binary-quantized vectors select 'candidates' chunks by Hamming distance ('<~>'),
+     * then only those candidates are re-ranked by the cosine distance of their full-precision vectors.
+     * The first pass runs on an HNSW index, which returns at most hnsw.ef_search rows; call
+     * {@link #setHnswEfSearch(int)} in the same transaction first.
+     *
+     * @param embedding The vector to compare against, in pgvector text format.
      * @param limit The number of nearest neighbors to return.
-     * @return A list of the most similar CodeEmbedding entities.
+     * @param candidates The number of candidates taken from the quantized first pass; should be a multiple of limit.
+     * @return The most similar chunks, best match first.
+     */
+    @Query(value = """
+            SELECT e.id, e.file_path AS "filePath", e.start_offset AS "startOffset", e.end_offset AS "endOffset",
+                   e.duplicate_paths AS "duplicatePaths", 1 - (c.embedding <=> CAST(?1 AS vector)) AS "score"
+            FROM (
+                SELECT content_hash, embedding
+                FROM code_chunk_content
+                ORDER BY embedding_bits <~> CAST(binary_quantize(CAST(?1 AS vector)) AS bit(4096))
+                LIMIT ?3
+            ) c
+            JOIN code_embedding e ON e.content_hash = c.content_hash
+            ORDER BY c.embedding <=> CAST(?1 AS vector)
+            LIMIT ?2
+            """, nativeQuery = true)
+    List<CodeSearchHit> findMostSimilarQuantized(String embedding, int limit, int candidates);
+
+    /**
+     * Sets hnsw.ef_search for the rest of the current transaction, so an HNSW index scan can return
+     * as many candidates as requested (pgvector defaults to 40 and accepts at most 1000).
+     *
+     * @param efSearch The size of the dynamic candidate list.
+     * @return The new setting.
+     */
+    @Query(value = "SELECT set_config('hnsw.ef_search', CAST(?1 AS text), true)", nativeQuery = true)
+    String setHnswEfSearch(int efSearch);
+
+    /**
+     * Picks random stored chunks to use as search queries when evaluating the quantized search.
+     *
+     * @param sampleSize The number of chunks to pick.
+     * @return Rows of [id, vector in pgvector text format].
      */
-    @Query(value = "SELECT * FROM code_embedding ORDER BY embedding <=> ?1 LIMIT ?2", nativeQuery = true)
-    List<CodeEmbedding> findMostSimilar(String embedding, int limit);
+    @Query(value = """
+            SELECT e.id, CAST(c.embedding AS text)
+            FROM code_embedding e
+            JOIN code_chunk_content c ON c.content_hash = e.content_hash
+            ORDER BY random()
+            LIMIT ?1
+            """, nativeQuery = true)
+    List<Object[]> findRandomSamples(int sampleSize);
 }
\ No newline at end of file
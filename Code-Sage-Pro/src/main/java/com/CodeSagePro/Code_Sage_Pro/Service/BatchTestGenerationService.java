@@ -0,0 +1,286 @@
+package com.CodeSagePro.Code_Sage_Pro.Service;
+
+import com.CodeSagePro.Code_Sage_Pro.Dto.BatchTestResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@Service
+public class BatchTestGenerationService {
+
+    private final TestGenerationService testGenerationService;
+    private final JavaSymbolIndexService symbolIndexService;
+    private final int maxConcurrency;
+    private final Duration jobTtl;
+
+    private final Map<String, BatchJob> jobs = new ConcurrentHashMap<>();
+
+    private static class BatchJob {
+        private final String jobId;
+        private final String projectId;
+        private final String glob;
+        private final PathMatcher matcher;
+        // sourcePath -> latest result; successful results are kept when a job is resumed
+        private final Map<String, BatchTestResult> results = new ConcurrentHashMap<>();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile long finishedAtMillis;
+
+        private BatchJob(String jobId, String projectId, String glob) {
+            this.jobId = jobId;
+            this.projectId = projectId;
+            this.glob = glob;
+            // Compiled eagerly so that an invalid glob is rejected before the job is registered
+            this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        }
+    }
+
+    /**
+     * Receives the progress of a batch job. Callbacks are invoked from worker threads.
+     */
+    public interface BatchListener {
+        void onStart(String jobId, int pendingClasses);
+
+        void onResult(BatchTestResult result);
+
+        void onComplete(Map<String, Object> summary);
+    }
+
+    public BatchTestGenerationService(TestGenerationService testGenerationService,
+                                      JavaSymbolIndexService symbolIndexService,
+                                      @Value("${codesage.test-generation.batch.max-concurrency:4}") int maxConcurrency,
+                                      @Value("${codesage.test-generation.batch.job-ttl:1h}") Duration jobTtl) {
+        this.testGenerationService = testGenerationService;
+        this.symbolIndexService = symbolIndexService;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.jobTtl = jobTtl;
+    }
+
+    /**
+     * Starts (or resumes) generating tests for every Java class of a project matching a glob.
+     * Sources under {@code src/test/} are never selected. At most {@code maxConcurrency} classes
+     * (capped at the configured maximum) are sent to the AI at the same time. When resuming,
+     * classes that already have generated tests are skipped and only failed or missing ones are retried;
+     * a resumed job keeps the glob it was started with.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the decompressed project.
+     * @param glob A glob matched against project-relative paths, e.g. {@code src/main/java/**.java}.
+     *             When resuming it must be null or equal to the original glob.
+     * @param maxConcurrency The maximum number of parallel generations, or null for the configured maximum.
+     * @param resumeJobId The ID of a previous job to resume, or null to start a new one.
+     * @param listener Notified when the job starts, as each result completes, and with the job summary at the end.
+     * @return The ID of the job.
+     * @throws IOException if the project cannot be scanned.
+     * @throws NoSuchElementException if the job to resume does not exist for this project.
+     * @throws IllegalArgumentException if the glob is invalid or differs from the glob of the resumed job.
+     * @throws IllegalStateException if the job to resume is still running.
+     */
+    public String startBatch(String projectId, Path projectPath, String glob, Integer maxConcurrency, String resumeJobId,
+                             BatchListener listener) throws IOException {
+        evictExpiredJobs();
+        BatchJob job;
+        if (resumeJobId != null) {
+            job = jobs.get(resumeJobId);
+            if (job == null || !job.projectId.equals(projectId)) {
+                throw new NoSuchElementException("Batch job not found: " + resumeJobId);
+            }
+            if (glob != null && !glob.isBlank() && !glob.equals(job.glob)) {
+                throw new IllegalArgumentException("Batch job %s was started with glob '%s'; start a new job to use a different glob."
+                        .formatted(resumeJobId, job.glob));
+            }
+            if (!job.running.compareAndSet(false, true)) {
+                throw new IllegalStateException("Batch job is still running: " + resumeJobId);
+            }
+        } else {
+            job = new BatchJob(UUID.randomUUID().toString(), projectId, glob == null || glob.isBlank() ? "**.java" : glob);
+            job.running.set(true);
+            jobs.put(job.jobId, job);
+        }
+
+        List<Path> pending;
+        try {
+            pending = findPendingClasses(job, projectPath);
+            symbolIndexService.updateIndex(projectId, projectPath);
+        } catch (IOException | RuntimeException e) {
+            job.finishedAtMillis = System.currentTimeMillis();
+            job.running.set(false);
+            throw e;
+        }
+        int concurrency = maxConcurrency == null ? this.maxConcurrency : Math.max(1, Math.min(maxConcurrency, this.maxConcurrency));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, pending.size())));
+        listener.onStart(job.jobId, pending.size());
+
+        long startedAt = System.currentTimeMillis();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (Path sourceFile : pending) {
+            tasks.add(CompletableFuture.runAsync(() -> {
+                BatchTestResult result = generate(projectId, projectPath, sourceFile);
+                job.results.put(result.sourcePath(), result);
+                listener.onResult(result);
+            }, executor));
+        }
+
+        CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> {
+            executor.shutdown();
+            job.finishedAtMillis = System.currentTimeMillis();
+            job.running.set(false);
+            Map<String, Object> summary = summarize(job);
+            summary.put("totalMillis", System.currentTimeMillis() - startedAt);
+            listener.onComplete(summary);
+        });
+        return job.jobId;
+    }
+
+    /**
+     * Packages all successfully generated tests of a job into a ZIP archive, laid out like a Maven
+     * test source tree, together with a {@code timings.csv} listing the per-file outcome and duration.
+     * @param jobId The ID of the batch job.
+     * @return The bytes of the ZIP archive.
+     * @throws IOException if the archive cannot be written.
+     * @throws NoSuchElementException if the job does not exist.
+     */
+    public byte[] exportZip(String jobId) throws IOException {
+        evictExpiredJobs();
+        BatchJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new NoSuchElementException("Batch job not found: " + jobId);
+        }
+
+        List<BatchTestResult> results = job.results.values().stream()
+                .sorted(Comparator.comparing(BatchTestResult::sourcePath))
+                .toList();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            StringBuilder timings = new StringBuilder("source,test,status,durationMillis\n");
+            for (BatchTestResult result : results) {
+                timings.append("%s,%s,%s,%d\n".formatted(csvField(result.sourcePath()), csvField(result.testPath()),
+                        result.succeeded() ? "OK" : "FAILED", result.durationMillis()));
+                if (result.succeeded()) {
+                    zos.putNextEntry(new ZipEntry(result.testPath()));
+                    zos.write(stripCodeFence(result.testCode()).getBytes(StandardCharsets.UTF_8));
+                    zos.closeEntry();
+                }
+            }
+            zos.putNextEntry(new ZipEntry("timings.csv"));
+            zos.write(timings.toString().getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<Path> findPendingClasses(BatchJob job, Path projectPath) throws IOException {
+        try (Stream<Path> paths = Files.walk(projectPath)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(".java"))
+                    .filter(path -> job.matcher.matches(projectPath.relativize(path)))
+                    .filter(path -> !isTestSource(projectPath.relativize(path).toString()))
+                    .filter(path -> {
+                        BatchTestResult previous = job.results.get(projectPath.relativize(path).toString());
+                        return previous == null || !previous.succeeded();
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Drops finished jobs, with their generated tests, once they are older than the configured TTL.
+     */
+    private void evictExpiredJobs() {
+        long cutoff = System.currentTimeMillis() - jobTtl.toMillis();
+        jobs.values().removeIf(job -> !job.running.get() && job.finishedAtMillis < cutoff);
+    }
+
+    /**
+     * Existing tests are not classes to generate tests for; {@code FooTest} would become {@code FooTestTest}.
+     */
+    private boolean isTestSource(String sourcePath) {
+        return ("/" + sourcePath.replace('\\', '/')).contains("/src/test/");
+    }
+
+    /**
+     * Generates the tests of one class. The symbol index is refreshed once per batch in
+     * {@link #startBatch}, so dependencies are looked up without walking the project again.
+     */
+    private BatchTestResult generate(String projectId, Path projectPath, Path sourceFile) {
+        String sourcePath = projectPath.relativize(sourceFile).toString();
+        String testPath = toTestPath(sourcePath);
+        long start = System.nanoTime();
+        try {
+            String content = Files.readString(sourceFile);
+            String dependencies = symbolIndexService.describeIndexedDependencies(projectId, projectPath, sourceFile);
+            String testCode = testGenerationService.generateUnitTests(content, sourceFile.getFileName().toString(), dependencies);
+            if (testCode == null || testCode.isBlank()) {
+                return new BatchTestResult(sourcePath, testPath, null, elapsedMillis(start), "The AI returned an empty response.");
+            }
+            return new BatchTestResult(sourcePath, testPath, testCode, elapsedMillis(start), null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new BatchTestResult(sourcePath, testPath, null, elapsedMillis(start), String.valueOf(e.getMessage()));
+        }
+    }
+
+    private Map<String, Object> summarize(BatchJob job) {
+        long succeeded = job.results.values().stream().filter(BatchTestResult::succeeded).count();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("jobId", job.jobId);
+        summary.put("succeeded", succeeded);
+        summary.put("failed", job.results.size() - succeeded);
+        summary.put("downloadUrl", "/api/project/generate-tests/batch/%s/zip".formatted(job.jobId));
+        return summary;
+    }
+
+    /**
+     * Maps {@code src/main/java/a/Foo.java} to {@code src/test/java/a/FooTest.java}.
+     */
+    private String toTestPath(String sourcePath) {
+        String normalized = sourcePath.replace('\\', '/');
+        String testPath = normalized.contains("src/main/java/")
+                ? normalized.replace("src/main/java/", "src/test/java/")
+                : normalized;
+        return testPath.substring(0, testPath.length() - ".java".length()) + "Test.java";
+    }
+
+    private String stripCodeFence(String testCode) {
+        String trimmed = testCode.strip();
+        if (trimmed.startsWith("```")) {
+            int firstLineEnd = trimmed.indexOf('\n');
+            int closingFence = trimmed.lastIndexOf("```");
+            if (firstLineEnd > 0 && closingFence > firstLineEnd) {
+                return trimmed.substring(firstLineEnd + 1, closingFence).strip() + "\n";
+            }
+        }
+        return trimmed + "\n";
+    }
+
+    private String csvField(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
\ No newline at end of file
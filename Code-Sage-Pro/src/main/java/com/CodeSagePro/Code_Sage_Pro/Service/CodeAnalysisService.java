@@ -1,55 +1,118 @@
 package com.CodeSagePro.Code_Sage_Pro.Service;
 
+import com.CodeSagePro.Code_Sage_Pro.Dto.ProjectDiff;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Service
 public class CodeAnalysisService {
 
+    private static final Pattern FILE_HEADING = Pattern.compile("^#{1,6}\\s*(?:File:)?\\s*`?([^`]+?)`?\\s*$");
+
     private final ChatClient chatClient;
+    private final NearDuplicateService nearDuplicateService;
+
+    // projectId -> (relative file path -> review findings; "" holds project-wide findings)
+    private final Map<String, Map<String, String>> reviewFindings = new ConcurrentHashMap<>();
+    private final Map<String, String> documentationCache = new ConcurrentHashMap<>();
 
-    public CodeAnalysisService(ChatClient.Builder chatClientBuilder) {
+    public CodeAnalysisService(ChatClient.Builder chatClientBuilder, NearDuplicateService nearDuplicateService) {
         this.chatClient = chatClientBuilder.build();
+        this.nearDuplicateService = nearDuplicateService;
     }
 
     /**
      * Analyzes the codebase for bugs, security vulnerabilities, performance issues, and code smells.
+     * The findings are cached per file so that a later upload of the same project can be re-reviewed incrementally.
      *
+     * @param projectId The ID under which the project is registered.
      * @param projectPath The path to the root of the decompressed project.
      * @return A string containing the AI-generated code review.
      */
-    public String performCodeReview(Path projectPath) {
-        String projectContent = getProjectContentAsString(projectPath);
-        if (projectContent.isEmpty()) {
-            return "Could not read project files for review.";
+    public String performCodeReview(String projectId, Path projectPath) {
+        Map<String, String> findings = new ConcurrentHashMap<>();
+        reviewFindings.put(projectId, findings);
+        return review(projectId, findings, projectPath, listFiles(projectPath), Set.of());
+    }
+
+    /**
+     * Re-reviews only the given files of a new upload and reuses the cached findings for every other file.
+     * Falls back to a full review if the cached findings could not be attributed to files, since there is
+     * then nothing to reuse.
+     *
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The path to the root of the newly decompressed upload.
+     * @param filesToReview The project-relative paths of the changed files and their dependents.
+     * @param removedFiles The project-relative paths of files that no longer exist.
+     * @return A string containing the combined code review of the whole project.
+     */
+    public String performCodeReview(String projectId, Path projectPath, Collection<String> filesToReview, Collection<String> removedFiles) {
+        Map<String, String> findings = reviewFindings.get(projectId);
+        if (findings == null || findings.keySet().equals(Set.of(""))) {
+            return performCodeReview(projectId, projectPath);
         }
+        return review(projectId, findings, projectPath, filesToReview, removedFiles);
+    }
 
-        String prompt = """
-                You are an expert code reviewer. Analyze the following codebase for bugs,
-                security vulnerabilities, performance issues, and code smells.
-                Provide a summary of your findings with specific file names and line numbers.
+    private String review(String projectId, Map<String, String> findings, Path projectPath, Collection<String> filesToReview, Collection<String> removedFiles) {
+        removedFiles.forEach(findings::remove);
 
-                Here is the codebase:
-                %s
-                """.formatted(projectContent);
+        String projectContent = filesToReview.isEmpty() ? "" : getProjectContentAsString(projectId, projectPath, filesToReview);
+        if (projectContent.isEmpty()) {
+            // Nothing readable to review (binary files, or only near-duplicate copies): keep the cached findings
+            filesToReview.forEach(findings::remove);
+        } else {
+            String prompt = """
+                    You are an expert code reviewer. Analyze the following codebase for bugs,
+                    security vulnerabilities, performance issues, and code smells.
+                    Provide a summary of your findings with specific file names and line numbers.
+                    Group your findings by file: start the findings of each file with a line "### File: <file name>"
+                    using the file names exactly as given, and list findings that concern no single file first.
+
+                    Here is the codebase:
+                    %s
+                    """.formatted(projectContent);
+
+            String review = chatClient.prompt().user(prompt).call().content();
+            filesToReview.forEach(findings::remove);
+            // Per-file findings replace those of the previous version; project-wide findings of a partial
+            // review only cover the reviewed files, so they are added to the earlier ones
+            splitFindingsByFile(review, filesToReview).forEach((file, text) -> findings.merge(file, text,
+                    (previous, added) -> previous.contains(added) ? previous : previous + "\n\n" + added));
+        }
 
-        return chatClient.prompt().user(prompt).call().content();
+        if (findings.isEmpty() && projectContent.isEmpty() && !filesToReview.isEmpty()) {
+            return "Could not read project files for review.";
+        }
+        return findings.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> entry.getKey().isEmpty() ? entry.getValue() : "### File: %s\n%s".formatted(entry.getKey(), entry.getValue()))
+                .collect(Collectors.joining("\n\n"));
     }
 
     /**
      * Automatically generates high-quality, Markdown-formatted documentation (e.g., a README.md).
      *
+     * @param projectId The ID under which the project is registered.
      * @param projectPath The path to the root of the decompressed project.
      * @return A string containing the AI-generated README documentation.
      */
-    public String generateDocumentation(Path projectPath) {
-        String projectContent = getProjectContentAsString(projectPath);
+    public String generateDocumentation(String projectId, Path projectPath) {
+        String projectContent = getProjectContentAsString(projectId, projectPath, listFiles(projectPath));
         if (projectContent.isEmpty()) {
             return "Could not read project files to generate documentation.";
         }
@@ -64,36 +127,113 @@ public class CodeAnalysisService {
                 %s
                 """.formatted(projectContent);
 
-        return chatClient.prompt().user(prompt).call().content();
+        String documentation = chatClient.prompt().user(prompt).call().content();
+        documentationCache.put(projectId, documentation);
+        return documentation;
     }
 
     /**
-     * Reads all files in the project directory and concatenates their content into a single string.
-     * This method processes files in parallel for efficiency.
-     * @param projectPath The path to the project directory.
-     * @return A single string containing the content of all files.
+     * Updates the previously generated documentation of a project for a new upload, sending the AI only
+     * the changed files instead of the whole codebase. Falls back to a full generation if no previous
+     * documentation exists, and reuses it unchanged if no file changed.
+     *
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The path to the root of the newly decompressed upload.
+     * @param diff The file-level difference to the previous upload.
+     * @return A string containing the updated README documentation.
      */
-    private String getProjectContentAsString(Path projectPath) {
+    public String updateDocumentation(String projectId, Path projectPath, ProjectDiff diff) {
+        String previousDocumentation = documentationCache.get(projectId);
+        if (previousDocumentation == null) {
+            return generateDocumentation(projectId, projectPath);
+        }
+        if (diff.isEmpty()) {
+            return previousDocumentation;
+        }
+
+        String prompt = """
+                You are a technical writer. Below is the current Markdown README.md of a project, followed by
+                the files that were added or modified since it was written and the list of removed files.
+                Update the README so it reflects these changes. Keep every section that is still accurate
+                unchanged and respond with the complete updated README only.
+
+                Current README:
+                %s
+
+                Removed files:
+                %s
+
+                Added or modified files:
+                %s
+                """.formatted(previousDocumentation,
+                diff.removed().isEmpty() ? "(none)" : String.join("\n", diff.removed()),
+                getProjectContentAsString(projectId, projectPath, diff.changed()));
+
+        String documentation = chatClient.prompt().user(prompt).call().content();
+        documentationCache.put(projectId, documentation);
+        return documentation;
+    }
+
+    /**
+     * Splits a grouped review into per-file findings. Text before the first recognized file heading,
+     * or the whole review if the AI ignored the requested format, is kept under the empty key.
+     */
+    private Map<String, String> splitFindingsByFile(String review, Collection<String> reviewedFiles) {
+        Map<String, String> findings = new HashMap<>();
+        String currentFile = "";
+        StringBuilder section = new StringBuilder();
+        for (String line : review.split("\\R")) {
+            Matcher matcher = FILE_HEADING.matcher(line);
+            if (matcher.matches() && reviewedFiles.contains(matcher.group(1).trim())) {
+                findings.merge(currentFile, section.toString().strip(), (a, b) -> (a + "\n" + b).strip());
+                currentFile = matcher.group(1).trim();
+                section.setLength(0);
+            } else {
+                section.append(line).append('\n');
+            }
+        }
+        findings.merge(currentFile, section.toString().strip(), (a, b) -> (a + "\n" + b).strip());
+        findings.values().removeIf(String::isBlank);
+        return findings;
+    }
+
+    private List<String> listFiles(Path projectPath) {
         try (Stream<Path> paths = Files.walk(projectPath)) {
-            return paths
-                    .filter(Files::isRegularFile)
-                    // Use parallel stream for faster processing on multi-core systems
-                    .parallel()
-                    .map(path -> {
-                        try {
-                            String fileName = projectPath.relativize(path).toString();
-                            String content = Files.readString(path);
-                            return "--- File: %s ---\n%s\n".formatted(fileName, content);
-                        } catch (IOException e) {
-                            // Silently ignore files that cannot be read
-                            return "";
-                        }
-                    })
-                    .collect(Collectors.joining("\n"));
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> projectPath.relativize(path).toString())
+                    .sorted()
+                    .toList();
         } catch (IOException e) {
-            // Log the error and return an empty string
             e.printStackTrace();
-            return "";
+            return List.of();
         }
     }
+
+    /**
+     * Reads the given files of the project directory and concatenates their content into a single string.
+     * Near-duplicate copies are left out; a line below their representative's header lists them instead.
+     * This method processes files in parallel for efficiency.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The path to the project directory.
+     * @param files The project-relative paths of the files to include.
+     * @return A single string containing the content of the files.
+     */
+    private String getProjectContentAsString(String projectId, Path projectPath, Collection<String> files) {
+        return files.stream()
+                .filter(fileName -> !nearDuplicateService.isRedundantCopy(projectId, projectPath, fileName))
+                // Use parallel stream for faster processing on multi-core systems
+                .parallel()
+                .map(fileName -> {
+                    try {
+                        String content = Files.readString(projectPath.resolve(fileName));
+                        return "--- File: %s ---\n%s%s\n".formatted(fileName,
+                                nearDuplicateService.omittedDuplicatesLine(projectId, projectPath, fileName), content);
+                    } catch (IOException e) {
+                        // Silently ignore files that cannot be read
+                        return "";
+                    }
+                })
+                .filter(content -> !content.isEmpty())
+                .collect(Collectors.joining("\n"));
+    }
 }
\ No newline at end of file
@@ -1,89 +1,315 @@
 package com.CodeSagePro.Code_Sage_Pro.Service;
 
+import com.CodeSagePro.Code_Sage_Pro.Dto.CodeSearchHit;
 import com.CodeSagePro.Code_Sage_Pro.Model.CodeEmbedding;
+import com.CodeSagePro.Code_Sage_Pro.Repository.CodeChunkContentRepository;
 import com.CodeSagePro.Code_Sage_Pro.Repository.CodeEmbeddingRepository;
 import com.pgvector.PGvector;
-import org.springframework.ai.embedding.Embedding;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.embedding.EmbeddingRequest;
-import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.Collections;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Stores and searches the embeddings of the most recently analyzed project. The index holds one project
+ * at a time: each analysis replaces all stored chunk locations and deletes the chunks no longer referenced,
+ * including those of previously analyzed projects.
+ */
 @Service
 public class EmbeddingService {
 
+    // Upper bound of characters per chunk; chunks end at a line break where possible
+    static final int CHUNK_SIZE = 4000;
+    // Chunks sent to the embedding model per request
+    static final int EMBEDDING_BATCH_SIZE = 32;
+    // Upper bound pgvector accepts for hnsw.ef_search, which caps the candidates of the quantized first pass
+    private static final int MAX_CANDIDATES = 1000;
+
     private final EmbeddingModel embeddingModel;
     private final CodeEmbeddingRepository repository;
+    private final CodeChunkContentRepository contentRepository;
+    private final NearDuplicateService nearDuplicateService;
+    private final boolean quantizedSearchEnabled;
+    private final int oversampling;
+
+    private record ChunkLocation(String filePath, int start, int end, String contentHash, String duplicatePaths) {}
 
-    public EmbeddingService(EmbeddingModel embeddingModel, CodeEmbeddingRepository repository) {
+    /**
+     * A non-blank piece of a file as it is embedded, addressed by the SHA-256 hash of its text.
+     */
+    record Chunk(int start, int end, String text, String contentHash) {}
+
+    public EmbeddingService(EmbeddingModel embeddingModel, CodeEmbeddingRepository repository,
+                            CodeChunkContentRepository contentRepository,
+                            NearDuplicateService nearDuplicateService,
+                            @Value("${codesage.embedding.quantized-search.enabled:false}") boolean quantizedSearchEnabled,
+                            @Value("${codesage.embedding.quantized-search.oversampling:10}") int oversampling) {
         this.embeddingModel = embeddingModel;
         this.repository = repository;
+        this.contentRepository = contentRepository;
+        this.nearDuplicateService = nearDuplicateService;
+        this.quantizedSearchEnabled = quantizedSearchEnabled;
+        this.oversampling = Math.max(1, oversampling);
     }
 
-    public void generateAndStoreEmbeddings(Path projectPath) {
-        repository.deleteAll();
+    /**
+     * Splits every text file of the project into chunks and stores where each chunk occurs. Chunks are
+     * addressed by the SHA-256 hash of their text; only chunks whose hash has no stored vector yet are
+     * embedded, in batches, so unchanged code is not embedded again on later uploads or after a restart.
+     * Chunk text is stored GZIP-compressed. Near-duplicate copies of other files are skipped; only their
+     * group's representative is embedded, and its chunks record which copies they stand in for.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the decompressed project.
+     */
+    public void generateAndStoreEmbeddings(String projectId, Path projectPath) {
+        Set<String> storedHashes = new HashSet<>(contentRepository.findAllContentHashes());
+        // contentHash -> text of the chunks that still need a vector; duplicated chunks are embedded once
+        Map<String, String> pendingChunks = new LinkedHashMap<>();
+        List<ChunkLocation> locations = new ArrayList<>();
 
         try (Stream<Path> paths = Files.walk(projectPath)) {
             paths.filter(Files::isRegularFile)
-                    .findFirst() // Process only the first file for this debug step
-                    .ifPresent(path -> {
+                    .filter(path -> !nearDuplicateService.isRedundantCopy(projectId, projectPath, projectPath.relativize(path).toString()))
+                    .sorted()
+                    .forEach(path -> {
+                        String content;
                         try {
-                            String content = Files.readString(path);
-                            if (content.isBlank()) return;
-
-                            EmbeddingRequest embeddingRequest = new EmbeddingRequest(List.of(content), null);
-                            EmbeddingResponse embeddingResponse = this.embeddingModel.call(embeddingRequest);
-
-                            // --- DEBUGGING SECTION ---
-                            // Let's find the correct method to get the vector.
-                            var result = embeddingResponse.getResult();
-                            var embeddingObject = result.getOutput();
-
-                            System.out.println("--- DEBUG INFO ---");
-                            System.out.println("The class of the object containing the vector is: " + embeddingObject.getClass().getName());
-                            System.out.println("Available methods on this object are:");
-                            for (Method method : embeddingObject.getClass().getMethods()) {
-                                System.out.println("- " + method.getName());
-                            }
-                            System.out.println("--------------------");
-                            // --- END DEBUGGING SECTION ---
-
-                            // TODO: Replace this placeholder with the correct method call from the logs above.
-                            // It will likely be a method that returns a List, like 'getVector', 'asList', or 'getEmbedding'.
-                            List<Double> vector = Collections.emptyList(); // Placeholder
-                            // For example, if you see a method called 'getVector()', the line would be:
-                            // List<Double> vector = embeddingObject.getVector();
-
-
-                            // The rest of the logic remains the same
-                            if (!vector.isEmpty()) {
-                                float[] floatVector = new float[vector.size()];
-                                for (int i = 0; i < vector.size(); i++) {
-                                    floatVector[i] = vector.get(i).floatValue();
-                                }
-                                CodeEmbedding codeEmbedding = new CodeEmbedding();
-                                codeEmbedding.setFilePath(projectPath.relativize(path).toString());
-                                codeEmbedding.setContent(content);
-                                codeEmbedding.setEmbedding(new PGvector(floatVector));
-                                repository.save(codeEmbedding);
-                                System.out.println("Successfully generated and saved embedding for one file.");
-                            }
-
+                            content = Files.readString(path);
                         } catch (IOException e) {
-                            e.printStackTrace();
+                            // Binary or unreadable files are not embedded
+                            return;
+                        }
+                        if (content.isBlank()) return;
+
+                        String filePath = projectPath.relativize(path).toString();
+                        List<String> duplicates = nearDuplicateService.duplicatesOf(projectId, projectPath, filePath);
+                        String duplicatePaths = duplicates.isEmpty() ? null : String.join(",", duplicates);
+                        for (Chunk chunk : split(content)) {
+                            if (!storedHashes.contains(chunk.contentHash())) {
+                                pendingChunks.putIfAbsent(chunk.contentHash(), chunk.text());
+                            }
+                            locations.add(new ChunkLocation(filePath, chunk.start(), chunk.end(), chunk.contentHash(), duplicatePaths));
                         }
                     });
         } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+
+        // Embed first: if the model fails, the previously stored project stays searchable
+        embedPendingChunks(pendingChunks);
+
+        repository.replaceAll(locations.stream().map(this::toEmbedding).toList());
+        contentRepository.deleteUnreferenced();
+        if (quantizedSearchEnabled) {
+            // binary_quantize and bit_hamming_ops need pgvector 0.7+, so they are only touched when enabled
+            contentRepository.quantizePendingEmbeddings();
+            contentRepository.createQuantizedIndex();
+        }
+    }
+
+    /**
+     * Finds the code chunks most similar to a natural-language or code query.
+     * @param query The text to search for.
+     * @param limit The maximum number of hits to return.
+     * When quantized search is enabled, candidates are preselected on the binary-quantized vectors
+     * and only those are re-ranked with the full-precision vectors.
+     * @return Lightweight hits, best match first; use {@link #loadChunkContent(Long)} for the text of a hit.
+     */
+    @Transactional(readOnly = true)
+    public List<CodeSearchHit> search(String query, int limit) {
+        String vector = new PGvector(embeddingModel.embed(query)).getValue();
+        if (!quantizedSearchEnabled) {
+            return repository.findMostSimilar(vector, limit);
+        }
+        int candidates = Math.min(limit * oversampling, MAX_CANDIDATES);
+        repository.setHnswEfSearch(candidates);
+        return repository.findMostSimilarQuantized(vector, limit, candidates);
+    }
+
+    /**
+     * Compares the quantized two-stage search with exact search on the stored chunks of the current project.
+     * Randomly sampled chunks are used as queries; each sample's own chunk is left out of both result lists.
+     * Both searches run once untimed to warm the caches, and their order alternates between samples so
+     * neither profits from pages the other one just read.
+     * @param sampleSize The number of sample queries.
+     * @param k The number of nearest neighbors compared per query.
+     * @return Mean recall@k of the quantized search against exact search for the configured oversampling and
+     *         candidate count, mean latencies and the speedup.
+     * @throws IllegalStateException if quantized search is disabled.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> evaluateQuantizedSearch(int sampleSize, int k) {
+        if (!quantizedSearchEnabled) {
+            throw new IllegalStateException("Quantized search is disabled (codesage.embedding.quantized-search.enabled).");
+        }
+        int candidates = Math.min((k + 1) * oversampling, MAX_CANDIDATES);
+        repository.setHnswEfSearch(candidates);
+        List<Object[]> samples = repository.findRandomSamples(sampleSize);
+        if (!samples.isEmpty()) {
+            String warmUpVector = (String) samples.get(0)[1];
+            repository.findMostSimilar(warmUpVector, k + 1);
+            repository.findMostSimilarQuantized(warmUpVector, k + 1, candidates);
+        }
+        double recallSum = 0;
+        long exactNanos = 0;
+        long quantizedNanos = 0;
+
+        for (int i = 0; i < samples.size(); i++) {
+            long sampleId = ((Number) samples.get(i)[0]).longValue();
+            String vector = (String) samples.get(i)[1];
+            List<Long> exact;
+            List<Long> quantized;
+            long start;
+            if (i % 2 == 0) {
+                start = System.nanoTime();
+                exact = hitIds(repository.findMostSimilar(vector, k + 1), sampleId, k);
+                exactNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                quantized = hitIds(repository.findMostSimilarQuantized(vector, k + 1, candidates), sampleId, k);
+                quantizedNanos += System.nanoTime() - start;
+            } else {
+                start = System.nanoTime();
+                quantized = hitIds(repository.findMostSimilarQuantized(vector, k + 1, candidates), sampleId, k);
+                quantizedNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                exact = hitIds(repository.findMostSimilar(vector, k + 1), sampleId, k);
+                exactNanos += System.nanoTime() - start;
+            }
+
+            if (!exact.isEmpty()) {
+                recallSum += (double) quantized.stream().filter(exact::contains).count() / exact.size();
+            }
+        }
+
+        int count = Math.max(1, samples.size());
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("samples", samples.size());
+        report.put("k", k);
+        report.put("oversampling", oversampling);
+        report.put("candidates", candidates);
+        report.put("recallAtK", recallSum / count);
+        report.put("exactMillis", exactNanos / 1e6 / count);
+        report.put("quantizedMillis", quantizedNanos / 1e6 / count);
+        report.put("speedup", quantizedNanos == 0 ? 0 : (double) exactNanos / quantizedNanos);
+        return report;
+    }
+
+    private List<Long> hitIds(List<CodeSearchHit> hits, long excludedId, int k) {
+        return hits.stream()
+                .map(CodeSearchHit::getId)
+                .filter(id -> id != excludedId)
+                .limit(k)
+                .toList();
+    }
+
+    /**
+     * Loads and decompresses the text of a single search hit.
+     * @param embeddingId The ID of the hit.
+     * @return The chunk text, if the hit exists.
+     */
+    public Optional<String> loadChunkContent(Long embeddingId) {
+        return contentRepository.findCompressedContentByEmbeddingId(embeddingId)
+                .map(this::decompress);
+    }
+
+    private void embedPendingChunks(Map<String, String> pendingChunks) {
+        List<Map.Entry<String, String>> pending = new ArrayList<>(pendingChunks.entrySet());
+        for (int from = 0; from < pending.size(); from += EMBEDDING_BATCH_SIZE) {
+            List<Map.Entry<String, String>> batch = pending.subList(from, Math.min(from + EMBEDDING_BATCH_SIZE, pending.size()));
+            List<float[]> vectors = embeddingModel.embed(batch.stream().map(Map.Entry::getValue).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                String chunk = batch.get(i).getValue();
+                contentRepository.insertWithEmbedding(batch.get(i).getKey(), compress(chunk), chunk.length(),
+                        new PGvector(vectors.get(i)).getValue());
+            }
+        }
+    }
+
+    private CodeEmbedding toEmbedding(ChunkLocation location) {
+        CodeEmbedding codeEmbedding = new CodeEmbedding();
+        codeEmbedding.setFilePath(location.filePath());
+        codeEmbedding.setStartOffset(location.start());
+        codeEmbedding.setEndOffset(location.end());
+        codeEmbedding.setDuplicatePaths(location.duplicatePaths());
+        codeEmbedding.setContent(contentRepository.getReferenceById(location.contentHash()));
+        return codeEmbedding;
+    }
+
+    /**
+     * Splits file content into chunks of at most {@link #CHUNK_SIZE} characters, ending at a line break
+     * where possible. Blank chunks are left out.
+     */
+    static List<Chunk> split(String content) {
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < content.length()) {
+            int end = chunkEnd(content, start);
+            String text = content.substring(start, end);
+            if (!text.isBlank()) {
+                chunks.add(new Chunk(start, end, text, sha256(text)));
+            }
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static int chunkEnd(String content, int start) {
+        int end = Math.min(start + CHUNK_SIZE, content.length());
+        if (end == content.length()) {
+            return end;
+        }
+        int lineBreak = content.lastIndexOf('\n', end - 1);
+        return lineBreak > start ? lineBreak + 1 : end;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] compress(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private String decompress(byte[] compressed) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 }
\ No newline at end of file
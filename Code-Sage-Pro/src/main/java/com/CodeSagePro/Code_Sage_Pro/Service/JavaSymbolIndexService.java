@@ -0,0 +1,365 @@
+package com.CodeSagePro.Code_Sage_Pro.Service;
+
+import com.CodeSagePro.Code_Sage_Pro.Dto.ProjectDiff;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class JavaSymbolIndexService {
+
+    private static final Pattern TYPE_DECLARATION = Pattern.compile("\\b(class|interface|enum|record)\\s+([A-Za-z_$][\\w$]*)");
+    private static final Pattern PACKAGE_DECLARATION = Pattern.compile("^package\\s+([\\w.]+)$");
+    private static final Pattern IMPORT_DECLARATION = Pattern.compile("^import\\s+(static\\s+)?([\\w.]+)(\\.\\*)?$");
+    private static final Pattern ANNOTATION = Pattern.compile("@(?!interface\\b)[\\w.]+(\\s*\\([^()]*\\))?");
+    private static final Pattern TYPE_REFERENCE = Pattern.compile("\\b[A-Z][\\w$]*\\b");
+
+    // projectId -> (relative file path -> parsed symbols of that file)
+    private final Map<String, Map<String, IndexedFile>> indexes = new ConcurrentHashMap<>();
+
+    private record IndexedFile(long lastModified, long size, String packageName,
+                               Set<String> imports, Set<String> referencedTypes, List<ClassSymbol> classes) {}
+
+    private record ClassSymbol(String name, String qualifiedName, String packageName, String filePath,
+                               String declaration, List<String> members) {}
+
+    /**
+     * The refreshed index of a new upload and the files its changes affect. The project's index is
+     * only replaced by it in {@link #commit(String, PendingIndex)}.
+     */
+    public record PendingIndex(Map<String, IndexedFile> files, Set<String> affectedFiles) {}
+
+    /**
+     * Builds (or refreshes) the symbol index of a project. Only Java files whose size or modification
+     * time changed since the last call are parsed again, deleted files are dropped from the index.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the decompressed project.
+     */
+    public void updateIndex(String projectId, Path projectPath) {
+        refresh(indexes.computeIfAbsent(projectId, id -> new ConcurrentHashMap<>()), projectPath);
+    }
+
+    private void refresh(Map<String, IndexedFile> index, Path projectPath) {
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        try (Stream<Path> paths = Files.walk(projectPath)) {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(".java"))
+                    .parallel()
+                    .forEach(path -> {
+                        String relativePath = projectPath.relativize(path).toString();
+                        seen.add(relativePath);
+                        try {
+                            long lastModified = Files.getLastModifiedTime(path).toMillis();
+                            long size = Files.size(path);
+                            IndexedFile existing = index.get(relativePath);
+                            if (existing != null && existing.lastModified() == lastModified && existing.size() == size) {
+                                return;
+                            }
+                            index.put(relativePath, parse(relativePath, Files.readString(path), lastModified, size));
+                        } catch (IOException e) {
+                            // Silently skip files that cannot be read
+                            index.remove(relativePath);
+                        }
+                    });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        index.keySet().retainAll(seen);
+    }
+
+    /**
+     * Renders the signatures (no method bodies) of every project class the target file directly depends on.
+     * The index is refreshed incrementally before the lookup, so edits to the project are picked up.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the decompressed project.
+     * @param targetFile The Java file tests are being generated for.
+     * @return Java-like signature listings of the direct dependencies, or an empty string if there are none.
+     */
+    public String describeDirectDependencies(String projectId, Path projectPath, Path targetFile) {
+        updateIndex(projectId, projectPath);
+        return describeIndexedDependencies(projectId, projectPath, targetFile);
+    }
+
+    /**
+     * Same as {@link #describeDirectDependencies} but answers from the index as it is, without walking
+     * the project first. Intended for callers that already refreshed the index, e.g. batch generation.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the decompressed project.
+     * @param targetFile The Java file tests are being generated for.
+     * @return Java-like signature listings of the direct dependencies, or an empty string if there are none.
+     */
+    public String describeIndexedDependencies(String projectId, Path projectPath, Path targetFile) {
+        Map<String, IndexedFile> index = indexes.getOrDefault(projectId, Map.of());
+        IndexedFile target = index.get(projectPath.relativize(targetFile).toString());
+        if (target == null) {
+            return "";
+        }
+
+        Map<String, List<ClassSymbol>> classesByName = index.values().stream()
+                .flatMap(file -> file.classes().stream())
+                .collect(Collectors.groupingBy(ClassSymbol::name));
+        Set<String> ownClasses = target.classes().stream().map(ClassSymbol::name).collect(Collectors.toSet());
+
+        return target.referencedTypes().stream()
+                .filter(name -> !ownClasses.contains(name))
+                .map(name -> resolve(name, classesByName.get(name), target))
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(ClassSymbol::qualifiedName))
+                .map(this::render)
+                .collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Indexes a new upload of a project and works out which files have to be analyzed again:
+     * the changed files themselves plus every Java file referencing a type declared in a modified
+     * or removed file (before the change) or in an added or modified file (after the change).
+     * The new index is built on a copy, so the project's index keeps describing the previous upload
+     * until the result is committed.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the newly decompressed upload.
+     * @param diff The file-level difference to the previous upload.
+     * @return The new index together with the project-relative paths of the changed files and their dependents.
+     */
+    public PendingIndex findAffected(String projectId, Path projectPath, ProjectDiff diff) {
+        Map<String, IndexedFile> previous = indexes.getOrDefault(projectId, Map.of());
+        Set<String> previousVersions = new HashSet<>(diff.modified());
+        previousVersions.addAll(diff.removed());
+        Set<String> changedTypes = declaredTypes(previous, previousVersions);
+
+        Map<String, IndexedFile> index = new ConcurrentHashMap<>(previous);
+        refresh(index, projectPath);
+        changedTypes.addAll(declaredTypes(index, diff.changed()));
+
+        Set<String> affected = new TreeSet<>(diff.changed());
+        index.forEach((path, file) -> {
+            if (!Collections.disjoint(file.referencedTypes(), changedTypes)) {
+                affected.add(path);
+            }
+        });
+        return new PendingIndex(index, affected);
+    }
+
+    /**
+     * Replaces the index of a project with the one built by {@link #findAffected(String, Path, ProjectDiff)}.
+     * @param projectId The ID under which the project is registered.
+     * @param index The index of the upload that was analyzed successfully.
+     */
+    public void commit(String projectId, PendingIndex index) {
+        indexes.put(projectId, index.files());
+    }
+
+    private Set<String> declaredTypes(Map<String, IndexedFile> index, Set<String> files) {
+        return files.stream()
+                .map(index::get)
+                .filter(Objects::nonNull)
+                .flatMap(file -> file.classes().stream())
+                .map(ClassSymbol::name)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * Picks the declaration a simple type name refers to, preferring explicit imports,
+     * then the target's own package, then wildcard imports.
+     */
+    private ClassSymbol resolve(String simpleName, List<ClassSymbol> candidates, IndexedFile target) {
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        for (ClassSymbol candidate : candidates) {
+            if (target.imports().contains(candidate.qualifiedName())) {
+                return candidate;
+            }
+        }
+        for (ClassSymbol candidate : candidates) {
+            if (candidate.packageName().equals(target.packageName())) {
+                return candidate;
+            }
+        }
+        for (ClassSymbol candidate : candidates) {
+            if (target.imports().contains(qualify(candidate.packageName(), "*"))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private String render(ClassSymbol symbol) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("// ").append(symbol.filePath()).append('\n');
+        builder.append(symbol.declaration()).append(" {\n");
+        for (String member : symbol.members()) {
+            builder.append("    ").append(member).append(";\n");
+        }
+        return builder.append("}\n").toString();
+    }
+
+    /**
+     * Extracts package, imports, referenced type names and the non-private class members of a Java source file.
+     * This is a lightweight brace-matching scanner rather than a full parser: it only needs to recover
+     * declarations, never method bodies.
+     */
+    private IndexedFile parse(String relativePath, String source, long lastModified, long size) {
+        String code = ANNOTATION.matcher(stripCommentsAndLiterals(source)).replaceAll(" ");
+
+        String packageName = "";
+        Set<String> imports = new HashSet<>();
+        List<ClassSymbol> classes = new ArrayList<>();
+
+        // Each frame is either a type declaration (members are collected) or an opaque block (ignored)
+        Deque<List<String>> memberFrames = new ArrayDeque<>();
+        Deque<Boolean> typeFrames = new ArrayDeque<>();
+        Deque<String> typeNames = new ArrayDeque<>();
+        StringBuilder statement = new StringBuilder();
+
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            boolean inType = !typeFrames.isEmpty() && typeFrames.peek();
+            boolean atTopLevel = typeFrames.isEmpty();
+
+            if (c == '{') {
+                String header = normalize(statement);
+                statement.setLength(0);
+                Matcher typeMatcher = TYPE_DECLARATION.matcher(header);
+                boolean typeDeclaration = (atTopLevel || inType) && typeMatcher.find() && !header.contains("=")
+                        && (!header.contains("(") || typeMatcher.group(1).equals("record"));
+                if (typeDeclaration) {
+                    String name = typeMatcher.group(2);
+                    String enclosing = String.join(".", reversed(typeNames));
+                    String nestedName = enclosing.isEmpty() ? name : enclosing + "." + name;
+                    List<String> members = new ArrayList<>();
+                    classes.add(new ClassSymbol(name, qualify(packageName, nestedName), packageName, relativePath, header, members));
+                    memberFrames.push(members);
+                    typeFrames.push(true);
+                    typeNames.push(name);
+                } else {
+                    if (inType && isMember(header)) {
+                        memberFrames.peek().add(memberSignature(header));
+                    }
+                    typeFrames.push(false);
+                }
+            } else if (c == '}') {
+                if (inType && !memberFrames.isEmpty() && memberFrames.peek().isEmpty()) {
+                    // Enum without a body after its constants
+                    String constants = normalize(statement);
+                    if (!constants.isEmpty()) {
+                        memberFrames.peek().add(constants);
+                    }
+                }
+                statement.setLength(0);
+                if (!typeFrames.isEmpty() && typeFrames.pop()) {
+                    memberFrames.pop();
+                    typeNames.pop();
+                }
+            } else if (c == ';') {
+                String header = normalize(statement);
+                statement.setLength(0);
+                if (atTopLevel) {
+                    Matcher packageMatcher = PACKAGE_DECLARATION.matcher(header);
+                    Matcher importMatcher = IMPORT_DECLARATION.matcher(header);
+                    if (packageMatcher.matches()) {
+                        packageName = packageMatcher.group(1);
+                    } else if (importMatcher.matches() && importMatcher.group(1) == null) {
+                        imports.add(importMatcher.group(2) + (importMatcher.group(3) == null ? "" : ".*"));
+                    }
+                } else if (inType && isMember(header)) {
+                    memberFrames.peek().add(memberSignature(header));
+                }
+            } else {
+                statement.append(c);
+            }
+        }
+
+        Set<String> referencedTypes = new LinkedHashSet<>();
+        Matcher referenceMatcher = TYPE_REFERENCE.matcher(code);
+        while (referenceMatcher.find()) {
+            referencedTypes.add(referenceMatcher.group());
+        }
+        return new IndexedFile(lastModified, size, packageName, imports, referencedTypes, classes);
+    }
+
+    private boolean isMember(String header) {
+        return !header.isEmpty()
+                && !header.startsWith("private ")
+                && !header.equals("static");
+    }
+
+    /**
+     * Reduces a member header to its signature: field initializers are dropped, methods keep their parameter list.
+     */
+    private String memberSignature(String header) {
+        int assignment = header.indexOf('=');
+        int parenthesis = header.indexOf('(');
+        if (assignment >= 0 && (parenthesis < 0 || assignment < parenthesis)) {
+            return header.substring(0, assignment).trim();
+        }
+        return header;
+    }
+
+    private String stripCommentsAndLiterals(String source) {
+        StringBuilder result = new StringBuilder(source.length());
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (source.startsWith("//", i)) {
+                int end = source.indexOf('\n', i);
+                i = end < 0 ? source.length() : end;
+            } else if (source.startsWith("/*", i)) {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? source.length() : end + 2;
+                result.append(' ');
+            } else if (source.startsWith("\"\"\"", i)) {
+                int end = source.indexOf("\"\"\"", i + 3);
+                i = end < 0 ? source.length() : end + 3;
+                result.append("\"\"");
+            } else if (c == '"' || c == '\'') {
+                int j = i + 1;
+                while (j < source.length() && source.charAt(j) != c && source.charAt(j) != '\n') {
+                    j += source.charAt(j) == '\\' ? 2 : 1;
+                }
+                i = Math.min(j + 1, source.length());
+                result.append(c).append(c);
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    private String normalize(CharSequence text) {
+        return text.toString().replaceAll("\\s+", " ").replace("( ", "(").trim();
+    }
+
+    private String qualify(String packageName, String name) {
+        return packageName.isEmpty() ? name : packageName + "." + name;
+    }
+
+    private List<String> reversed(Deque<String> stack) {
+        List<String> names = new ArrayList<>(stack);
+        Collections.reverse(names);
+        return names;
+    }
+}
\ No newline at end of file
@@ -2,11 +2,21 @@ package com.CodeSagePro.Code_Sage_Pro.Service;
 
 
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -14,56 +24,148 @@ import java.util.stream.Stream;
 public class LiveEditingService {
 
     private final ChatClient chatClient;
+    private final NearDuplicateService nearDuplicateService;
+    private final Duration sessionTtl;
 
-    public LiveEditingService(ChatClient.Builder chatClientBuilder) {
+    private final Map<String, LiveEditSession> sessions = new ConcurrentHashMap<>();
+
+    private static class LiveEditSession {
+        private final String projectId;
+        private final String systemPrompt;
+        private final List<Message> history = new ArrayList<>();
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        private LiveEditSession(String projectId, String systemPrompt) {
+            this.projectId = projectId;
+            this.systemPrompt = systemPrompt;
+        }
+    }
+
+    public LiveEditingService(ChatClient.Builder chatClientBuilder, NearDuplicateService nearDuplicateService,
+                              @Value("${codesage.live-edit.session-ttl:30m}") Duration sessionTtl) {
         this.chatClient = chatClientBuilder.build();
+        this.nearDuplicateService = nearDuplicateService;
+        this.sessionTtl = sessionTtl;
     }
 
     /**
-     * Generates a step-by-step guide for a developer to implement a feature.
+     * Starts a multi-turn live-edit session. The project is read once and frozen into the system prompt,
+     * so every turn of the session sends a byte-identical prefix that the model server can reuse from its cache.
+     * @param projectId The ID of the project the session works on.
      * @param projectPath The path to the root of the decompressed project.
+     * @return The ID of the new session.
+     * @throws IOException if a file I/O error occurs.
+     */
+    public String startSession(String projectId, Path projectPath) throws IOException {
+        evictExpiredSessions();
+        String sessionId = UUID.randomUUID().toString();
+        sessions.put(sessionId, new LiveEditSession(projectId, buildSystemPrompt(projectId, projectPath)));
+        return sessionId;
+    }
+
+    /**
+     * Checks whether a session exists for the given project and has not expired.
+     */
+    public boolean hasSession(String sessionId, String projectId) {
+        evictExpiredSessions();
+        LiveEditSession session = sessions.get(sessionId);
+        return session != null && session.projectId.equals(projectId);
+    }
+
+    /**
+     * Sends the next user request of a session. Earlier requests and answers are replayed after the
+     * stable project prefix, so only the new turn has to be processed from scratch.
+     * @param sessionId The ID returned by {@link #startSession(String, Path)}.
+     * @param projectId The ID of the project; must match the one the session was started for.
      * @param userPrompt The user's goal for the implementation.
      * @return A Markdown-formatted string containing the step-by-step guide.
-     * @throws IOException if a file I/O error occurs.
      */
-    public String generateImplementationGuide(Path projectPath, String userPrompt) throws IOException {
-        String projectContent = getProjectContentAsString(projectPath);
+    public String continueSession(String sessionId, String projectId, String userPrompt) {
+        evictExpiredSessions();
+        LiveEditSession session = sessions.get(sessionId);
+        if (session == null || !session.projectId.equals(projectId)) {
+            throw new IllegalArgumentException("Live-edit session not found: " + sessionId);
+        }
+        session.lastUsedMillis = System.currentTimeMillis();
+
+        // Turns of one session are answered in order so the history stays a strict extension of the prefix
+        synchronized (session) {
+            String userMessage = formatUserRequest(userPrompt);
+            String guide = chatClient.prompt()
+                    .system(session.systemPrompt)
+                    .messages(List.copyOf(session.history))
+                    .user(userMessage)
+                    .call()
+                    .content();
+            session.history.add(new UserMessage(userMessage));
+            session.history.add(new AssistantMessage(guide));
+            session.lastUsedMillis = System.currentTimeMillis();
+            return guide;
+        }
+    }
+
+    /**
+     * Ends a live-edit session and releases its project snapshot and history.
+     */
+    public void endSession(String sessionId) {
+        sessions.remove(sessionId);
+    }
 
-        // *** THE NEW PROMPT ***
-        String prompt = """
-                You are an expert software architect and senior developer.
-                Your task is to provide a clear, step-by-step guide for a junior developer to implement a new feature based on their request, using the provided codebase as context.
+    /**
+     * Drops sessions idle for longer than the configured TTL. The TTL matches the model server's
+     * keep_alive, after which the cached prefix is gone and keeping the history buys nothing.
+     */
+    private void evictExpiredSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTtl.toMillis();
+        sessions.values().removeIf(session -> session.lastUsedMillis < cutoff);
+    }
+
+    /**
+     * Builds the instructions and codebase part of the prompt. It must not contain anything turn-specific,
+     * so that it stays identical across all turns of a session.
+     */
+    private String buildSystemPrompt(String projectId, Path projectPath) throws IOException {
+        String projectContent = getProjectContentAsString(projectId, projectPath);
 
-                USER REQUEST: "%s"
+        return """
+                You are an expert software architect and senior developer.
+                Your task is to provide a clear, step-by-step guide for a junior developer to implement new features based on their requests, using the provided codebase as context.
 
                 Follow these requirements precisely:
                 1.  Analyze the provided codebase to understand its structure and conventions.
-                2.  Break down the task into a series of simple, actionable steps.
+                2.  Break down each task into a series of simple, actionable steps.
                 3.  For each step, specify which file to create or modify.
                 4.  Provide the exact code snippets that need to be added or changed.
                 5.  The entire response MUST be formatted in Markdown. Use headings, lists, and code blocks.
+                6.  Follow-up requests build on the previous answers of this conversation.
 
                 EXISTING CODEBASE:
                 %s
-                """.formatted(userPrompt, projectContent);
+                """.formatted(projectContent);
+    }
 
-        // The service now simply returns the AI's direct response. No parsing is needed.
-        return chatClient.prompt().user(prompt).call().content();
+    private String formatUserRequest(String userPrompt) {
+        return "USER REQUEST: \"%s\"".formatted(userPrompt);
     }
 
     /**
      * Reads all files in the project directory and concatenates their content into a single string.
+     * Files are visited in sorted order so the same project always produces the same string.
+     * Near-duplicate copies are left out; a line below their representative's header lists them instead.
      */
-    private String getProjectContentAsString(Path projectPath) throws IOException {
+    private String getProjectContentAsString(String projectId, Path projectPath) throws IOException {
         try (Stream<Path> paths = Files.walk(projectPath)) {
             return paths
                     .filter(Files::isRegularFile)
+                    .filter(path -> !nearDuplicateService.isRedundantCopy(projectId, projectPath, projectPath.relativize(path).toString()))
+                    .sorted()
                     .parallel()
                     .map(path -> {
                         try {
                             String fileName = projectPath.relativize(path).toString();
                             String content = Files.readString(path);
-                            return "--- File: %s ---\n%s\n".formatted(fileName, content);
+                            return "--- File: %s ---\n%s%s\n".formatted(fileName,
+                                    nearDuplicateService.omittedDuplicatesLine(projectId, projectPath, fileName), content);
                         } catch (IOException e) {
                             return "";
                         }
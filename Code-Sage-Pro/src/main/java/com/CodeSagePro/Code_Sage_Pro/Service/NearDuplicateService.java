@@ -0,0 +1,333 @@
+package com.CodeSagePro.Code_Sage_Pro.Service;
+
+import com.CodeSagePro.Code_Sage_Pro.Dto.DuplicateGroup;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class NearDuplicateService {
+
+    // 16 bands of 8 rows put the LSH threshold near 0.7; pairs at 0.8 similarity share a bucket ~95% of the time
+    private static final int BANDS = 16;
+    private static final int ROWS_PER_BAND = 8;
+    private static final int NUM_HASHES = BANDS * ROWS_PER_BAND;
+    private static final int SHINGLE_SIZE = 5;
+    private static final int MIN_SHINGLES = 10;
+    private static final double SIMILARITY_THRESHOLD = 0.8;
+    private static final long[] SEEDS = new Random(42).longs(NUM_HASHES).toArray();
+    // Build output and vendored dependencies; a copy in here is never chosen to stand in for its group
+    private static final Set<String> GENERATED_DIRECTORIES = Set.of(
+            "target", "build", "out", "dist", "node_modules", "bower_components", "vendor", ".gradle", ".git");
+
+    // Source files first, then the shortest path, which is usually the original
+    private static final Comparator<FileSignature> REPRESENTATIVE_ORDER =
+            Comparator.comparing((FileSignature signature) -> isGenerated(signature.path()))
+                    .thenComparingInt(signature -> signature.path().length())
+                    .thenComparing(FileSignature::path);
+
+    // projectId -> index of the project's latest upload; uploads are never modified in place, so it stays
+    // valid until a different upload of the project is looked up, which replaces it
+    private final Map<String, DuplicateIndex> cache = new ConcurrentHashMap<>();
+
+    private record FileSignature(String path, int length, long[] minHashes) {}
+
+    private record DuplicateIndex(Path projectPath, List<DuplicateGroup> groups, Map<String, List<String>> duplicatesByRepresentative,
+                                  Set<String> redundantFiles, Map<String, Integer> fileLengths, long chunksSkipped) {}
+
+    /**
+     * Groups the near-duplicate text files of a project using MinHash signatures over token shingles
+     * and locality-sensitive hashing, so only likely pairs are compared.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the decompressed project.
+     * @return The groups of near-identical files, largest first.
+     */
+    public List<DuplicateGroup> findDuplicateGroups(String projectId, Path projectPath) {
+        return index(projectId, projectPath).groups();
+    }
+
+    /**
+     * @return True if the file is a near-duplicate of another file that stands in for it.
+     */
+    public boolean isRedundantCopy(String projectId, Path projectPath, String relativePath) {
+        return index(projectId, projectPath).redundantFiles().contains(relativePath);
+    }
+
+    /**
+     * @return The files that the given representative stands in for, or an empty list.
+     */
+    public List<String> duplicatesOf(String projectId, Path projectPath, String relativePath) {
+        return index(projectId, projectPath).duplicatesByRepresentative().getOrDefault(relativePath, List.of());
+    }
+
+    /**
+     * Compares the duplicate groups of two uploads of a project and lists the files of the new upload whose
+     * role changed: files that became or stopped being a redundant copy, copies that now belong to a different
+     * representative, and files that became or stopped being a representative. Such files need a new review
+     * even if their content is unchanged, since they were left out of or added to the previous prompt.
+     * @param projectId The ID under which the project is registered.
+     * @param previousPath The root path of the previously analyzed upload.
+     * @param projectPath The root path of the new upload.
+     * @return The project-relative paths of the affected files that exist in the new upload.
+     */
+    public Set<String> filesWithChangedRole(String projectId, Path previousPath, Path projectPath) {
+        Map<String, String> previousRoles = roles(index(projectId, previousPath));
+        Map<String, String> currentRoles = roles(index(projectId, projectPath));
+
+        Set<String> changed = new TreeSet<>();
+        Stream.concat(previousRoles.keySet().stream(), currentRoles.keySet().stream())
+                .filter(file -> !Objects.equals(previousRoles.get(file), currentRoles.get(file)))
+                .filter(file -> Files.isRegularFile(projectPath.resolve(file)))
+                .forEach(changed::add);
+        return changed;
+    }
+
+    /**
+     * Describes the copies a representative stands in for, for use in a prompt on the line below the
+     * file heading. The heading itself must stay the bare path, since the model echoes it back.
+     * @return A line naming the omitted near-duplicates, or an empty string if there are none.
+     */
+    public String omittedDuplicatesLine(String projectId, Path projectPath, String relativePath) {
+        List<String> duplicates = duplicatesOf(projectId, projectPath, relativePath);
+        return duplicates.isEmpty()
+                ? ""
+                : "(Near-duplicate copies of this file, omitted: %s)\n".formatted(String.join(", ", duplicates));
+    }
+
+    /**
+     * Summarizes the duplicate groups and estimates what leaving the redundant copies out saves.
+     * Tokens are estimated at four characters per token. Skipped chunks are the distinct chunks of the
+     * copies that their representative does not contain as well, since identical chunks are embedded once
+     * anyway; embedding calls are counted in batches as the chunks would have been sent.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the decompressed project.
+     * @return The groups, the number of skipped files, the estimated tokens saved and the chunks and
+     *         embedding calls saved.
+     */
+    public Map<String, Object> savingsReport(String projectId, Path projectPath) {
+        DuplicateIndex index = index(projectId, projectPath);
+        long skippedCharacters = index.redundantFiles().stream()
+                .mapToLong(file -> index.fileLengths().getOrDefault(file, 0))
+                .sum();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("groups", index.groups());
+        report.put("skippedFiles", index.redundantFiles().size());
+        report.put("estimatedTokensSaved", skippedCharacters / 4);
+        report.put("chunksSkipped", index.chunksSkipped());
+        report.put("embeddingCallsSaved",
+                (index.chunksSkipped() + EmbeddingService.EMBEDDING_BATCH_SIZE - 1) / EmbeddingService.EMBEDDING_BATCH_SIZE);
+        return report;
+    }
+
+    // file -> "representative", or "copy of <representative>"; files outside any group have no role
+    private Map<String, String> roles(DuplicateIndex index) {
+        Map<String, String> roles = new HashMap<>();
+        index.duplicatesByRepresentative().forEach((representative, duplicates) -> {
+            roles.put(representative, "representative");
+            duplicates.forEach(duplicate -> roles.put(duplicate, "copy of " + representative));
+        });
+        return roles;
+    }
+
+    private DuplicateIndex index(String projectId, Path projectPath) {
+        DuplicateIndex cached = cache.get(projectId);
+        if (cached != null && cached.projectPath().equals(projectPath)) {
+            return cached;
+        }
+        return cache.compute(projectId, (id, current) ->
+                current != null && current.projectPath().equals(projectPath) ? current : buildIndex(projectPath));
+    }
+
+    private DuplicateIndex buildIndex(Path projectPath) {
+        List<FileSignature> signatures;
+        try (Stream<Path> paths = Files.walk(projectPath)) {
+            signatures = paths.filter(Files::isRegularFile)
+                    .parallel()
+                    .map(path -> sign(projectPath, path))
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparing(FileSignature::path))
+                    .toList();
+        } catch (IOException e) {
+            e.printStackTrace();
+            signatures = List.of();
+        }
+
+        // Files sharing any band bucket become candidate pairs; candidates are merged if similar enough
+        int[] parent = new int[signatures.size()];
+        Arrays.setAll(parent, i -> i);
+        for (int band = 0; band < BANDS; band++) {
+            Map<Integer, List<Integer>> buckets = new HashMap<>();
+            for (int i = 0; i < signatures.size(); i++) {
+                long[] minHashes = signatures.get(i).minHashes();
+                int bucket = Arrays.hashCode(Arrays.copyOfRange(minHashes, band * ROWS_PER_BAND, (band + 1) * ROWS_PER_BAND));
+                buckets.computeIfAbsent(bucket, key -> new ArrayList<>()).add(i);
+            }
+            for (List<Integer> bucket : buckets.values()) {
+                for (int a = 0; a < bucket.size(); a++) {
+                    for (int b = a + 1; b < bucket.size(); b++) {
+                        int first = bucket.get(a);
+                        int second = bucket.get(b);
+                        if (find(parent, first) != find(parent, second)
+                                && similarity(signatures.get(first), signatures.get(second)) >= SIMILARITY_THRESHOLD) {
+                            parent[find(parent, second)] = find(parent, first);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<Integer, List<FileSignature>> components = new HashMap<>();
+        for (int i = 0; i < signatures.size(); i++) {
+            components.computeIfAbsent(find(parent, i), key -> new ArrayList<>()).add(signatures.get(i));
+        }
+
+        List<DuplicateGroup> groups = new ArrayList<>();
+        Map<String, List<String>> duplicatesByRepresentative = new HashMap<>();
+        Set<String> redundantFiles = new HashSet<>();
+        for (List<FileSignature> component : components.values()) {
+            // Components are transitive (A~B~C), so a member only counts as a copy if it is similar enough
+            // to the representative itself; the others are grouped again among themselves
+            List<FileSignature> remaining = new ArrayList<>(component);
+            while (remaining.size() >= 2) {
+                FileSignature representative = remaining.stream().min(REPRESENTATIVE_ORDER).orElseThrow();
+                remaining.remove(representative);
+                List<FileSignature> members = remaining.stream()
+                        .filter(member -> similarity(representative, member) >= SIMILARITY_THRESHOLD)
+                        .toList();
+                if (members.isEmpty()) {
+                    continue;
+                }
+                remaining.removeAll(members);
+
+                List<String> duplicates = members.stream().map(FileSignature::path).toList();
+                double lowestSimilarity = members.stream()
+                        .mapToDouble(member -> similarity(representative, member))
+                        .min()
+                        .orElse(1.0);
+                groups.add(new DuplicateGroup(representative.path(), duplicates, lowestSimilarity));
+                duplicatesByRepresentative.put(representative.path(), duplicates);
+                redundantFiles.addAll(duplicates);
+            }
+        }
+        groups.sort(Comparator.comparingInt((DuplicateGroup group) -> group.duplicates().size()).reversed()
+                .thenComparing(DuplicateGroup::representative));
+
+        Map<String, Integer> fileLengths = signatures.stream()
+                .collect(Collectors.toMap(FileSignature::path, FileSignature::length));
+        long chunksSkipped = duplicatesByRepresentative.entrySet().stream()
+                .mapToLong(group -> countSkippedChunks(projectPath, group.getKey(), group.getValue()))
+                .sum();
+        return new DuplicateIndex(projectPath, groups, duplicatesByRepresentative, redundantFiles, fileLengths, chunksSkipped);
+    }
+
+    /**
+     * Counts the distinct chunks of a group's copies that the representative does not have itself,
+     * i.e. the chunks that embedding the copies would have added.
+     */
+    private long countSkippedChunks(Path projectPath, String representative, List<String> duplicates) {
+        Set<String> embeddedHashes = chunkHashes(projectPath, representative);
+        return duplicates.stream()
+                .flatMap(duplicate -> chunkHashes(projectPath, duplicate).stream())
+                .filter(hash -> !embeddedHashes.contains(hash))
+                .distinct()
+                .count();
+    }
+
+    private Set<String> chunkHashes(Path projectPath, String relativePath) {
+        try {
+            return EmbeddingService.split(Files.readString(projectPath.resolve(relativePath))).stream()
+                    .map(EmbeddingService.Chunk::contentHash)
+                    .collect(Collectors.toSet());
+        } catch (IOException e) {
+            return Set.of();
+        }
+    }
+
+    /**
+     * Computes the MinHash signature of a file over its token 5-shingles.
+     * Returns null for unreadable (binary) files and files too short to compare meaningfully.
+     */
+    private FileSignature sign(Path projectPath, Path path) {
+        String content;
+        try {
+            content = Files.readString(path);
+        } catch (IOException e) {
+            return null;
+        }
+        String[] tokens = Arrays.stream(content.split("\\W+")).filter(token -> !token.isEmpty()).toArray(String[]::new);
+        if (tokens.length - SHINGLE_SIZE + 1 < MIN_SHINGLES) {
+            return null;
+        }
+
+        long[] minHashes = new long[NUM_HASHES];
+        Arrays.fill(minHashes, Long.MAX_VALUE);
+        for (int start = 0; start + SHINGLE_SIZE <= tokens.length; start++) {
+            long shingleHash = String.join(" ", Arrays.copyOfRange(tokens, start, start + SHINGLE_SIZE)).hashCode();
+            for (int i = 0; i < NUM_HASHES; i++) {
+                long hash = mix(shingleHash ^ SEEDS[i]);
+                if (hash < minHashes[i]) {
+                    minHashes[i] = hash;
+                }
+            }
+        }
+        return new FileSignature(projectPath.relativize(path).toString(), content.length(), minHashes);
+    }
+
+    /**
+     * @return True if the path lies inside a build output or vendored dependency directory.
+     */
+    private static boolean isGenerated(String relativePath) {
+        for (Path segment : Path.of(relativePath)) {
+            if (GENERATED_DIRECTORIES.contains(segment.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Estimates the Jaccard similarity of two files as the fraction of equal MinHash values.
+     */
+    private double similarity(FileSignature first, FileSignature second) {
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (first.minHashes()[i] == second.minHashes()[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / NUM_HASHES;
+    }
+
+    private int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // SplitMix64 finalizer, turns the seeded shingle hash into one independent hash function per seed
+    private long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.CodeSagePro.Code_Sage_Pro.Service;
+
+import com.CodeSagePro.Code_Sage_Pro.Dto.ProjectDiff;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class ProjectSnapshotService {
+
+    // projectId -> (relative file path -> SHA-256 of the file content) of the latest upload
+    private final Map<String, Map<String, String>> snapshots = new ConcurrentHashMap<>();
+
+    public boolean hasSnapshot(String projectId) {
+        return snapshots.containsKey(projectId);
+    }
+
+    /**
+     * File hashes of a new upload together with their difference to the stored snapshot of the project.
+     * Nothing is stored until the upload is passed to {@link #commit(String, PendingSnapshot)}.
+     */
+    public record PendingSnapshot(Map<String, String> fileHashes, ProjectDiff diff) {}
+
+    /**
+     * Hashes every file of a new upload and compares it with the stored snapshot of the project,
+     * leaving the stored snapshot unchanged.
+     * @param projectId The ID under which the project is registered.
+     * @param projectPath The root path of the newly decompressed upload.
+     * @return The new hashes and the files added, modified and removed since the previous upload.
+     *         Without a previous snapshot every file counts as added.
+     * @throws IOException if the project cannot be scanned.
+     */
+    public PendingSnapshot diff(String projectId, Path projectPath) throws IOException {
+        Map<String, String> current = hashFiles(projectPath);
+        Map<String, String> previous = snapshots.getOrDefault(projectId, Map.of());
+
+        Set<String> added = new TreeSet<>();
+        Set<String> modified = new TreeSet<>();
+        current.forEach((path, hash) -> {
+            String previousHash = previous.get(path);
+            if (previousHash == null) {
+                added.add(path);
+            } else if (!previousHash.equals(hash)) {
+                modified.add(path);
+            }
+        });
+        Set<String> removed = new TreeSet<>(previous.keySet());
+        removed.removeAll(current.keySet());
+
+        return new PendingSnapshot(current, new ProjectDiff(added, modified, removed));
+    }
+
+    /**
+     * Stores the snapshot of an upload once it has been analyzed, so the next upload is compared with it.
+     * @param projectId The ID under which the project is registered.
+     * @param snapshot The result of {@link #diff(String, Path)} for the upload.
+     */
+    public void commit(String projectId, PendingSnapshot snapshot) {
+        snapshots.put(projectId, snapshot.fileHashes());
+    }
+
+    private Map<String, String> hashFiles(Path projectPath) throws IOException {
+        try (Stream<Path> paths = Files.walk(projectPath)) {
+            return paths.filter(Files::isRegularFile)
+                    .parallel()
+                    .collect(Collectors.toConcurrentMap(
+                            path -> projectPath.relativize(path).toString(),
+                            this::hash));
+        }
+    }
+
+    private String hash(Path file) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(Files.readAllBytes(file)));
+        } catch (IOException e) {
+            // Unreadable files always count as changed
+            return "unreadable:" + System.nanoTime();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
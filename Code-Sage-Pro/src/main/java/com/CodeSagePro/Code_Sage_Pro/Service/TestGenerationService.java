@@ -20,6 +20,27 @@ public class TestGenerationService {
      * @return A string containing the generated JUnit test class.
      */
     public String generateUnitTests(String fileContent, String fileName) {
+        return generateUnitTests(fileContent, fileName, "");
+    }
+
+    /**
+     * Generates JUnit 5 tests for a given Java file's content, giving the AI the signatures of the
+     * project classes it depends on so that mocks and constructor calls match the real API.
+     * @param fileContent The source code of the Java class to test.
+     * @param fileName The name of the file, used for context.
+     * @param dependencySignatures Bodiless signatures of the class's direct dependencies, may be empty.
+     * @return A string containing the generated JUnit test class.
+     */
+    public String generateUnitTests(String fileContent, String fileName, String dependencySignatures) {
+        String dependencySection = dependencySignatures == null || dependencySignatures.isBlank() ? "" : """
+
+                The class under test depends on the following project classes. Only their signatures are shown;
+                use exactly these constructors, methods and types when creating or mocking them:
+                ```java
+                %s
+                ```
+                """.formatted(dependencySignatures);
+
         String prompt = """
                 You are an expert software developer specializing in Quality Assurance and automated testing.
                 Your task is to write a complete, runnable JUnit 5 test class for the provided Java class.
@@ -29,12 +50,12 @@ public class TestGenerationService {
                 2.  Generate meaningful test cases that cover the main logic, including edge cases and potential null inputs.
                 3.  The response MUST be a single, complete Java code block for the test class, including the package declaration, all necessary imports, the class definition, and test methods.
                 4.  Do not provide any explanations, comments, or any text outside of the single Java code block. The file name for the class to be tested is %s.
-
+                %s
                 Here is the Java class to write tests for:
                 ```java
                 %s
                 ```
-                """.formatted(fileName, fileContent);
+                """.formatted(fileName, dependencySection, fileContent);
 
         return chatClient.prompt()
                 .user(prompt)
@@ -0,0 +1,19 @@
+-- Schema as first created by the prod profile. Databases that already have these tables from the former
+-- schema script are baselined at this version (spring.flyway.baseline-on-migrate), so this only runs on empty ones.
+CREATE EXTENSION IF NOT EXISTS vector;
+
+CREATE TABLE code_chunk_content (
+    content_hash       VARCHAR(64) PRIMARY KEY,
+    compressed_content BYTEA       NOT NULL,
+    original_length    INTEGER     NOT NULL
+);
+
+CREATE TABLE code_embedding (
+    id             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_path      VARCHAR(255) NOT NULL,
+    start_offset   INTEGER      NOT NULL,
+    end_offset     INTEGER      NOT NULL,
+    content_hash   VARCHAR(64)  NOT NULL REFERENCES code_chunk_content (content_hash),
+    embedding      vector(4096),
+    embedding_bits BIT(4096)
+);
@@ -0,0 +1,27 @@
+-- Moves the vectors from every chunk occurrence to the shared chunk row, so identical chunks are embedded once,
+-- and records the near-duplicate files a chunk stands in for. Baselined databases may have been created by
+-- any later version of the former schema script, so every step tolerates being already applied.
+ALTER TABLE code_chunk_content ADD COLUMN IF NOT EXISTS embedding vector(4096);
+ALTER TABLE code_chunk_content ADD COLUMN IF NOT EXISTS embedding_bits BIT(4096);
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = 'code_embedding' AND column_name = 'embedding') THEN
+        -- All occurrences of a chunk have the same vector; keep one instead of embedding it again.
+        -- The quantized vectors are recomputed from it when quantized search is enabled.
+        UPDATE code_chunk_content c
+        SET embedding = e.embedding
+        FROM code_embedding e
+        WHERE e.content_hash = c.content_hash AND c.embedding IS NULL AND e.embedding IS NOT NULL;
+        ALTER TABLE code_embedding DROP COLUMN embedding;
+        ALTER TABLE code_embedding DROP COLUMN IF EXISTS embedding_bits;
+    END IF;
+END $$;
+
+-- A stored chunk counts as embedded, so a chunk left without a vector would never be embedded again
+DELETE FROM code_embedding e USING code_chunk_content c WHERE e.content_hash = c.content_hash AND c.embedding IS NULL;
+DELETE FROM code_chunk_content WHERE embedding IS NULL;
+
+ALTER TABLE code_embedding ADD COLUMN IF NOT EXISTS duplicate_paths TEXT;
+CREATE INDEX IF NOT EXISTS code_embedding_content_hash_idx ON code_embedding (content_hash);
@@ -0,0 +1,178 @@
+package com.CodeSagePro.Code_Sage_Pro.Service;
+
+import com.CodeSagePro.Code_Sage_Pro.Dto.BatchTestResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.ChatClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchTestGenerationServiceTest {
+
+	private static final String PROJECT_ID = "project";
+
+	@TempDir
+	Path projectPath;
+
+	private StubTestGenerationService generator;
+	private BatchTestGenerationService service;
+
+	@BeforeEach
+	void setUp() {
+		generator = new StubTestGenerationService();
+		service = new BatchTestGenerationService(generator, new JavaSymbolIndexService(), 2, Duration.ofHours(1));
+	}
+
+	@Test
+	void exportsGeneratedTestsAsMavenTestTree() throws Exception {
+		write("src/main/java/app/Foo.java", "package app;\npublic class Foo {}\n");
+		write("src/main/java/app/util/Bar.java", "package app.util;\npublic class Bar {}\n");
+		write("src/test/java/app/FooTest.java", "package app;\nclass FooTest {}\n");
+
+		RecordingListener listener = runBatch(null, null);
+		Map<String, String> zip = unzip(service.exportZip(listener.jobId));
+
+		assertEquals(2, listener.pendingClasses);
+		assertEquals(Set.of("src/test/java/app/FooTest.java", "src/test/java/app/util/BarTest.java", "timings.csv"), zip.keySet());
+		assertEquals("class FooTest {}\n", zip.get("src/test/java/app/FooTest.java"));
+		assertFalse(generator.calls.containsKey("FooTest.java"));
+
+		String[] timings = zip.get("timings.csv").split("\n");
+		assertEquals("source,test,status,durationMillis", timings[0]);
+		assertTrue(timings[1].startsWith("\"src/main/java/app/Foo.java\",\"src/test/java/app/FooTest.java\",OK,"), timings[1]);
+	}
+
+	@Test
+	void keepsAnswersWithoutCodeFenceAndMapsFilesOutsideMavenLayout() throws Exception {
+		write("scripts/Tool.java", "public class Tool {}\n");
+		generator.answer = "class ToolTest {}";
+
+		RecordingListener listener = runBatch(null, null);
+		Map<String, String> zip = unzip(service.exportZip(listener.jobId));
+
+		assertEquals("class ToolTest {}\n", zip.get("scripts/ToolTest.java"));
+	}
+
+	@Test
+	void resumeRetriesOnlyFailedClasses() throws Exception {
+		write("src/main/java/app/Foo.java", "package app;\npublic class Foo {}\n");
+		write("src/main/java/app/Bar.java", "package app;\npublic class Bar {}\n");
+		generator.failing.add("Bar.java");
+
+		RecordingListener first = runBatch(null, null);
+		assertEquals(1L, first.summary.get("failed"));
+
+		generator.failing.clear();
+		RecordingListener resumed = runBatch(null, first.jobId);
+
+		assertEquals(first.jobId, resumed.jobId);
+		assertEquals(1, resumed.pendingClasses);
+		assertEquals(List.of("src/main/java/app/Bar.java"), resumed.results.stream().map(BatchTestResult::sourcePath).toList());
+		assertEquals(1, generator.calls.get("Foo.java"));
+		assertEquals(2, generator.calls.get("Bar.java"));
+		assertEquals(2L, resumed.summary.get("succeeded"));
+	}
+
+	@Test
+	void rejectsInvalidAndChangedGlobs() throws Exception {
+		write("src/main/java/app/Foo.java", "package app;\npublic class Foo {}\n");
+
+		assertThrows(IllegalArgumentException.class, () -> runBatch("src/[main", null));
+		RecordingListener listener = runBatch("src/main/**.java", null);
+		assertThrows(IllegalArgumentException.class, () -> runBatch("other/**.java", listener.jobId));
+	}
+
+	private RecordingListener runBatch(String glob, String resumeJobId) throws Exception {
+		RecordingListener listener = new RecordingListener();
+		service.startBatch(PROJECT_ID, projectPath, glob, null, resumeJobId, listener);
+		listener.complete.get(10, TimeUnit.SECONDS);
+		return listener;
+	}
+
+	private Map<String, String> unzip(byte[] bytes) throws IOException {
+		Map<String, String> entries = new TreeMap<>();
+		try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+			for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
+				entries.put(entry.getName(), new String(zis.readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+		return entries;
+	}
+
+	private void write(String relativePath, String content) throws IOException {
+		Path file = projectPath.resolve(relativePath);
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, content);
+	}
+
+	private static class RecordingListener implements BatchTestGenerationService.BatchListener {
+		private final List<BatchTestResult> results = new CopyOnWriteArrayList<>();
+		private final CompletableFuture<Void> complete = new CompletableFuture<>();
+		private volatile String jobId;
+		private volatile int pendingClasses;
+		private volatile Map<String, Object> summary;
+
+		@Override
+		public void onStart(String jobId, int pendingClasses) {
+			this.jobId = jobId;
+			this.pendingClasses = pendingClasses;
+		}
+
+		@Override
+		public void onResult(BatchTestResult result) {
+			results.add(result);
+		}
+
+		@Override
+		public void onComplete(Map<String, Object> summary) {
+			this.summary = summary;
+			complete.complete(null);
+		}
+	}
+
+	/**
+	 * Answers with a fenced test class named after the file instead of calling the model.
+	 */
+	private static class StubTestGenerationService extends TestGenerationService {
+		private final Map<String, Integer> calls = new ConcurrentHashMap<>();
+		private final Set<String> failing = ConcurrentHashMap.newKeySet();
+		private volatile String answer;
+
+		private StubTestGenerationService() {
+			super((ChatClient.Builder) Proxy.newProxyInstance(ChatClient.Builder.class.getClassLoader(),
+					new Class<?>[]{ChatClient.Builder.class}, (proxy, method, args) -> null));
+		}
+
+		@Override
+		public String generateUnitTests(String fileContent, String fileName, String dependencySignatures) {
+			calls.merge(fileName, 1, Integer::sum);
+			if (failing.contains(fileName)) {
+				throw new IllegalStateException("model unavailable");
+			}
+			String className = fileName.substring(0, fileName.length() - ".java".length()) + "Test";
+			return answer != null ? answer : "```java\nclass %s {}\n```".formatted(className);
+		}
+	}
+}
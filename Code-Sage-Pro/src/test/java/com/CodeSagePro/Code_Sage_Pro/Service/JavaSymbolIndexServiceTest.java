@@ -0,0 +1,292 @@
+package com.CodeSagePro.Code_Sage_Pro.Service;
+
+import com.CodeSagePro.Code_Sage_Pro.Dto.ProjectDiff;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JavaSymbolIndexServiceTest {
+
+	private static final String PROJECT_ID = "project";
+
+	@TempDir
+	Path projectPath;
+
+	private JavaSymbolIndexService service;
+
+	@BeforeEach
+	void setUp() {
+		service = new JavaSymbolIndexService();
+	}
+
+	@Test
+	void ignoresTypeNamesInCommentsAndLiterals() throws IOException {
+		write("app/Helper.java", """
+				package app;
+				public class Helper {
+				    public void help() {}
+				}
+				""");
+		write("app/Target.java", """
+				package app;
+				// Helper is only mentioned here
+				/* and in a Helper block comment */
+				public class Target {
+				    public String name() { return "Helper { }"; }
+				    public char initial() { return 'H'; }
+				}
+				""");
+
+		assertEquals("", describe("app/Target.java"));
+	}
+
+	@Test
+	void textBlocksDoNotDeclareTypesOrUnbalanceBraces() throws IOException {
+		write("app/Template.java", """
+				package app;
+				public class Template {
+				    public static final String BODY = \"""
+				        public class Ghost { void broken() {
+				        \""";
+				    public String render(String name) { return BODY; }
+				}
+				""");
+		write("app/Target.java", """
+				package app;
+				public class Target {
+				    private Template template;
+				    private Ghost ghost;
+				}
+				""");
+
+		String dependencies = describe("app/Target.java");
+
+		assertTrue(dependencies.contains("public class Template {"), dependencies);
+		assertTrue(dependencies.contains("    public static final String BODY;"), dependencies);
+		assertTrue(dependencies.contains("    public String render(String name);"), dependencies);
+		assertFalse(dependencies.contains("Ghost"), dependencies);
+	}
+
+	@Test
+	void stripsAnnotationsFromSignaturesAndReferences() throws IOException {
+		write("app/Audited.java", """
+				package app;
+				public @interface Audited {
+				    String value() default "";
+				}
+				""");
+		write("app/Repository.java", """
+				package app;
+				@Audited("repository")
+				public class Repository {
+				    @Deprecated
+				    public String find(@Audited("id") String id) { return id; }
+				}
+				""");
+		write("app/Target.java", """
+				package app;
+				@Audited(value = "target")
+				public class Target {
+				    private Repository repository;
+				}
+				""");
+
+		String dependencies = describe("app/Target.java");
+
+		assertTrue(dependencies.contains("public class Repository {"), dependencies);
+		assertTrue(dependencies.contains("    public String find(String id);"), dependencies);
+		assertFalse(dependencies.contains("Audited"), dependencies);
+	}
+
+	@Test
+	void listsEnumConstantsWithAndWithoutBody() throws IOException {
+		write("app/Status.java", """
+				package app;
+				public enum Status { ACTIVE, INACTIVE }
+				""");
+		write("app/Level.java", """
+				package app;
+				public enum Level {
+				    LOW(1), HIGH(2);
+				    private final int weight;
+				    Level(int weight) { this.weight = weight; }
+				    public int weight() { return weight; }
+				}
+				""");
+		write("app/Target.java", """
+				package app;
+				public class Target {
+				    public Status status(Level level) { return Status.ACTIVE; }
+				}
+				""");
+
+		String dependencies = describe("app/Target.java");
+
+		assertTrue(dependencies.contains("public enum Status {\n    ACTIVE, INACTIVE;\n}"), dependencies);
+		assertTrue(dependencies.contains("    LOW(1), HIGH(2);"), dependencies);
+		assertTrue(dependencies.contains("    public int weight();"), dependencies);
+		assertFalse(dependencies.contains("this.weight"), dependencies);
+	}
+
+	@Test
+	void indexesNestedTypesUnderTheirEnclosingType() throws IOException {
+		write("app/Outer.java", """
+				package app;
+				public class Outer {
+				    public void outer() {}
+				    public static class Inner {
+				        public void inner() {}
+				    }
+				}
+				""");
+		write("other/Inner.java", """
+				package other;
+				public class Inner {
+				    public void unrelated() {}
+				}
+				""");
+		write("app/Target.java", """
+				package app;
+				public class Target {
+				    private Outer.Inner inner;
+				}
+				""");
+
+		String dependencies = describe("app/Target.java");
+
+		assertTrue(dependencies.contains("public class Outer {\n    public void outer();\n}"), dependencies);
+		assertTrue(dependencies.contains("public static class Inner {\n    public void inner();\n}"), dependencies);
+		assertFalse(dependencies.contains("unrelated"), dependencies);
+	}
+
+	@Test
+	void keepsLambdaFieldInitializersOutOfTheMemberList() throws IOException {
+		write("app/Worker.java", """
+				package app;
+				public class Worker {
+				    public Runnable task = () -> {
+				        System.out.println("busy");
+				        cleanUp();
+				    };
+				    public void run() { task.run(); }
+				    void cleanUp() {}
+				}
+				""");
+		write("app/Target.java", """
+				package app;
+				public class Target {
+				    private Worker worker;
+				}
+				""");
+
+		String dependencies = describe("app/Target.java");
+
+		assertTrue(dependencies.contains(
+				"public class Worker {\n    public Runnable task;\n    public void run();\n    void cleanUp();\n}"), dependencies);
+		assertFalse(dependencies.contains("println"), dependencies);
+	}
+
+	@Test
+	void resolvesAmbiguousNamesThroughImportsThenPackageThenWildcards() throws IOException {
+		write("a/Config.java", """
+				package a;
+				public class Config { public String fromA() { return ""; } }
+				""");
+		write("b/Config.java", """
+				package b;
+				public class Config { public String fromB() { return ""; } }
+				""");
+		write("a/ImportsB.java", """
+				package a;
+				import b.Config;
+				public class ImportsB { private Config config; }
+				""");
+		write("a/SamePackage.java", """
+				package a;
+				public class SamePackage { private Config config; }
+				""");
+		write("c/Wildcard.java", """
+				package c;
+				import b.*;
+				public class Wildcard { private Config config; }
+				""");
+		write("c/Unresolved.java", """
+				package c;
+				public class Unresolved { private Config config; }
+				""");
+
+		assertTrue(describe("a/ImportsB.java").contains("fromB()"));
+		assertTrue(describe("a/SamePackage.java").contains("fromA()"));
+		assertTrue(describe("c/Wildcard.java").contains("fromB()"));
+		assertEquals("", describe("c/Unresolved.java"));
+	}
+
+	@Test
+	void findsDependentsOfChangedFiles() throws IOException {
+		write("app/Service.java", """
+				package app;
+				public class Service { public void serve() {} }
+				""");
+		write("app/Client.java", """
+				package app;
+				public class Client { private Service service; }
+				""");
+		write("app/Standalone.java", """
+				package app;
+				public class Standalone {}
+				""");
+		service.updateIndex(PROJECT_ID, projectPath);
+
+		Set<String> affected = service.findAffected(PROJECT_ID, projectPath,
+				new ProjectDiff(Set.of(), Set.of(path("app/Service.java")), Set.of())).affectedFiles();
+
+		assertEquals(Set.of(path("app/Service.java"), path("app/Client.java")), affected);
+	}
+
+	@Test
+	void keepsPreviousIndexUntilCommitted() throws IOException {
+		write("app/Service.java", """
+				package app;
+				public class Service { public void serve() {} }
+				""");
+		write("app/Client.java", """
+				package app;
+				public class Client { private Service service; }
+				""");
+		service.updateIndex(PROJECT_ID, projectPath);
+
+		write("app/Service.java", """
+				package app;
+				public class Service { public void serveAll() {} }
+				""");
+		JavaSymbolIndexService.PendingIndex index = service.findAffected(PROJECT_ID, projectPath,
+				new ProjectDiff(Set.of(), Set.of(path("app/Service.java")), Set.of()));
+
+		assertTrue(service.describeIndexedDependencies(PROJECT_ID, projectPath, projectPath.resolve("app/Client.java")).contains("serve()"));
+		service.commit(PROJECT_ID, index);
+		assertTrue(service.describeIndexedDependencies(PROJECT_ID, projectPath, projectPath.resolve("app/Client.java")).contains("serveAll()"));
+	}
+
+	private String describe(String relativePath) {
+		return service.describeDirectDependencies(PROJECT_ID, projectPath, projectPath.resolve(relativePath));
+	}
+
+	private String path(String relativePath) {
+		return Path.of(relativePath).toString();
+	}
+
+	private void write(String relativePath, String content) throws IOException {
+		Path file = projectPath.resolve(relativePath);
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, content);
+	}
+}
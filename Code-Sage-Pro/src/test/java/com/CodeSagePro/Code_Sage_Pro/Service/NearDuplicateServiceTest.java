@@ -0,0 +1,170 @@
+package com.CodeSagePro.Code_Sage_Pro.Service;
+
+import com.CodeSagePro.Code_Sage_Pro.Dto.DuplicateGroup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NearDuplicateServiceTest {
+
+	private static final String PROJECT_ID = "project";
+
+	@TempDir
+	Path projectPath;
+
+	private NearDuplicateService service;
+
+	@BeforeEach
+	void setUp() {
+		service = new NearDuplicateService();
+	}
+
+	@Test
+	void neverPicksBuildOutputOrVendoredCopyAsRepresentative() throws IOException {
+		String page = words(1, 400);
+		write("src/main/resources/static/index.html", page);
+		write("target/classes/static/index.html", page);
+		String script = words(2, 400);
+		write("src/main/webapp/js/lib/util.js", script);
+		write("vendor/lib/util.js", script);
+
+		List<DuplicateGroup> groups = service.findDuplicateGroups(PROJECT_ID, projectPath);
+
+		assertEquals(List.of(
+				new DuplicateGroup(path("src/main/resources/static/index.html"), List.of(path("target/classes/static/index.html")), 1.0),
+				new DuplicateGroup(path("src/main/webapp/js/lib/util.js"), List.of(path("vendor/lib/util.js")), 1.0)), groups);
+		assertTrue(service.isRedundantCopy(PROJECT_ID, projectPath, path("vendor/lib/util.js")));
+		assertFalse(service.isRedundantCopy(PROJECT_ID, projectPath, path("src/main/webapp/js/lib/util.js")));
+	}
+
+	@Test
+	void keepsEndOfChainThatIsNotSimilarToRepresentative() throws IOException {
+		// A ~ B and B ~ C, but A and C differ in 50 of 300 words
+		String a = words(3, 300);
+		String b = shift(a, 25, 4);
+		String c = shift(b, 25, 5);
+		write("chain/A.txt", a);
+		write("chain/BB.txt", b);
+		write("chain/CCC.txt", c);
+
+		List<DuplicateGroup> groups = service.findDuplicateGroups(PROJECT_ID, projectPath);
+
+		assertEquals(1, groups.size());
+		assertEquals(path("chain/A.txt"), groups.get(0).representative());
+		assertEquals(List.of(path("chain/BB.txt")), groups.get(0).duplicates());
+		assertFalse(service.isRedundantCopy(PROJECT_ID, projectPath, path("chain/CCC.txt")));
+	}
+
+	@Test
+	void ignoresFilesWithTooFewShingles() throws IOException {
+		// 13 tokens make 9 shingles of 5, one below the minimum; 14 tokens make 10
+		String shortText = words(6, 13);
+		write("short/One.txt", shortText);
+		write("short/Two.txt", shortText);
+		String longEnough = words(7, 14);
+		write("long/One.txt", longEnough);
+		write("long/Two.txt", longEnough);
+
+		List<DuplicateGroup> groups = service.findDuplicateGroups(PROJECT_ID, projectPath);
+
+		assertEquals(List.of(new DuplicateGroup(path("long/One.txt"), List.of(path("long/Two.txt")), 1.0)), groups);
+	}
+
+	@Test
+	void countsOnlyChunksTheRepresentativeDoesNotHave() throws IOException {
+		// About 10,500 characters, i.e. three chunks ending at line breaks
+		String data = lines(8, 150);
+		String edited = data.substring(0, data.lastIndexOf('\n', data.length() - 2) + 1) + words(9, 10) + "\n";
+		write("lib/Data.txt", data);
+		write("copy1/Data.txt", data);
+		write("copy2/Data.txt", edited);
+		write("copy3/Data.txt", edited);
+
+		Map<String, Object> report = service.savingsReport(PROJECT_ID, projectPath);
+
+		assertEquals(3, report.get("skippedFiles"));
+		assertEquals((long) (data.length() + 2 * edited.length()) / 4, report.get("estimatedTokensSaved"));
+		// copy1 adds nothing, copy2 and copy3 share the one edited chunk
+		assertEquals(1L, report.get("chunksSkipped"));
+		assertEquals(1L, report.get("embeddingCallsSaved"));
+	}
+
+	@Test
+	void reportsNoSavingsForExactCopies() throws IOException {
+		String data = lines(10, 150);
+		write("lib/Data.txt", data);
+		write("copy/Data.txt", data);
+
+		Map<String, Object> report = service.savingsReport(PROJECT_ID, projectPath);
+
+		assertEquals(1, report.get("skippedFiles"));
+		assertEquals(0L, report.get("chunksSkipped"));
+		assertEquals(0L, report.get("embeddingCallsSaved"));
+	}
+
+	@Test
+	void findsFilesWhoseRoleChangedBetweenUploads() throws IOException {
+		String original = words(11, 300);
+		Path previous = projectPath.resolve("v1");
+		write(previous.resolve("A.txt"), original);
+		write(previous.resolve("BB.txt"), original);
+		Path current = projectPath.resolve("v2");
+		write(current.resolve("A.txt"), words(12, 300));
+		write(current.resolve("BB.txt"), original);
+
+		assertTrue(service.isRedundantCopy(PROJECT_ID, previous, "BB.txt"));
+		assertEquals(Set.of("A.txt", "BB.txt"), service.filesWithChangedRole(PROJECT_ID, previous, current));
+		assertFalse(service.isRedundantCopy(PROJECT_ID, current, "BB.txt"));
+	}
+
+	private static String words(int seed, int count) {
+		Random random = new Random(seed);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			text.append('w').append(random.nextInt(100_000)).append(' ');
+		}
+		return text.toString();
+	}
+
+	private static String lines(int seed, int count) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			text.append(words(seed * 1000 + i, 10)).append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Drops the first words of a text and appends as many new ones.
+	 */
+	private static String shift(String text, int count, int seed) {
+		String[] tokens = text.split(" ");
+		return String.join(" ", Arrays.copyOfRange(tokens, count, tokens.length)) + " " + words(seed, count);
+	}
+
+	private String path(String relativePath) {
+		return Path.of(relativePath).toString();
+	}
+
+	private void write(String relativePath, String content) throws IOException {
+		write(projectPath.resolve(relativePath), content);
+	}
+
+	private void write(Path file, String content) throws IOException {
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, content);
+	}
+}
@@ -0,0 +1,53 @@
+#!/bin/sh
+# Compares the cold-start time of the prod profile with and without the fast-startup optimizations,
+# adding one at a time so the contribution of each shows separately:
+#   eager:    plain jar, all beans created at startup
+#   aot+cds:  AOT-processed bean definitions + class data sharing archive, all beans created at startup
+#   fast:     aot+cds + lazy initialization
+# Lazy initialization does not remove work, it moves bean creation to the first request that needs it.
+# Only the aot+cds gain is saved outright; the lazy gain is paid back by the first request.
+# Both modes only validate the schema, so the database must be running but no data is touched.
+# Usage: ./startup-benchmark.sh [runs]
+set -e
+
+RUNS=${1:-5}
+JAR=target/Code-Sage-Pro-0.0.1-SNAPSHOT.jar
+EXTRACTED=target/extracted
+ARCHIVE=target/application.jsa
+# Exit as soon as the application context has been refreshed, i.e. when the app would start serving
+COMMON="-Dspring.profiles.active=prod -Dspring.context.exit=onRefresh"
+
+mvn -q -B -DskipTests -Pfast-startup clean package
+
+# Class data sharing needs the exploded layout and one training run to record the loaded classes
+rm -rf "$EXTRACTED"
+java -Djarmode=tools -jar "$JAR" extract --destination "$EXTRACTED"
+# Train eagerly so the archive also holds the classes of beans that lazy mode only creates later
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -Dspring.aot.enabled=true $COMMON -Dspring.main.lazy-initialization=false -jar "$EXTRACTED/$(basename "$JAR")" > /dev/null
+
+millis() {
+    echo $(($(date +%s%N) / 1000000))
+}
+
+measure() {
+    total=0
+    i=0
+    while [ "$i" -lt "$RUNS" ]; do
+        start=$(millis)
+        "$@" > /dev/null
+        total=$((total + $(millis) - start))
+        i=$((i + 1))
+    done
+    echo $((total / RUNS))
+}
+
+EAGER=$(measure java $COMMON -Dspring.main.lazy-initialization=false -jar "$JAR")
+AOT_CDS=$(measure java -XX:SharedArchiveFile="$ARCHIVE" -Dspring.aot.enabled=true $COMMON \
+    -Dspring.main.lazy-initialization=false -jar "$EXTRACTED/$(basename "$JAR")")
+FAST=$(measure java -XX:SharedArchiveFile="$ARCHIVE" -Dspring.aot.enabled=true $COMMON \
+    -Dspring.main.lazy-initialization=true -jar "$EXTRACTED/$(basename "$JAR")")
+
+echo "eager startup:   ${EAGER} ms (mean of $RUNS runs)"
+echo "aot+cds startup: ${AOT_CDS} ms, $((EAGER - AOT_CDS)) ms saved by AOT and CDS"
+echo "fast startup:    ${FAST} ms, $((AOT_CDS - FAST)) ms more deferred to the first requests by lazy initialization"
+echo "speedup:         $(awk "BEGIN { printf \"%.2f\", $EAGER / $AOT_CDS }")x without lazy initialization, $(awk "BEGIN { printf \"%.2f\", $EAGER / $FAST }")x with it"